@@ -92,6 +92,12 @@ public class EventListeners extends ListenerAdapter implements Cog {
         Message message = event.getMessage();
         long senderId = event.getAuthor().getIdLong();
         if (message.getAuthor().isBot()) return;
+        if (message.getContentRaw().trim().equalsIgnoreCase(".stop")) {
+            if (dis.cancelLoop(senderId, message.getGuildChannel())) {
+                mess.completeSendDiscordMessage(message.getGuildChannel(), "Stopping after the current step.");
+            }
+            return;
+        }
         String prefix = System.getenv("DISCORD_COMMAND_PREFIX");
         if (prefix != null && message.getContentRaw().startsWith(prefix)) return;
         if (message.getReferencedMessage() != null &&
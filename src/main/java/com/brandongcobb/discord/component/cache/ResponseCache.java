@@ -0,0 +1,177 @@
+/*  ResponseCache.java The purpose of this class is to remember provider
+ *  responses to deterministic requests so identical calls skip the network.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.cache;
+
+import com.brandongcobb.discord.Application;
+import com.brandongcobb.discord.registry.MetricsRegistry;
+import com.brandongcobb.discord.utils.inc.Helpers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+@Component
+public class ResponseCache {
+
+    private static final Logger LOGGER = Logger.getLogger(Application.class.getName());
+    private static final Set<String> VOLATILE_FIELDS = Set.of("metadata", "stream", "user");
+    private final ObjectMapper mapper = new ObjectMapper().configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+    private final boolean enabled = Helpers.getEnvBoolean("DISCORD_RESPONSE_CACHE", false);
+    private final int maxEntries = Helpers.getEnvInt("DISCORD_RESPONSE_CACHE_SIZE", 256);
+    private final long ttlMillis = Helpers.getEnvInt("DISCORD_RESPONSE_CACHE_TTL_SECONDS", 600) * 1000L;
+    private final Path directory;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            boolean evict = size() > maxEntries;
+            if (evict) MetricsRegistry.increment("cache.response.evicted");
+            return evict;
+        }
+    };
+
+    public ResponseCache() {
+        String dir = System.getenv("DISCORD_RESPONSE_CACHE_DIR");
+        Path path = null;
+        if (enabled && dir != null && !dir.isBlank()) {
+            try {
+                path = Files.createDirectories(Path.of(dir));
+            } catch (IOException e) {
+                LOGGER.warning("Response cache disk tier disabled, cannot create " + dir + ": " + e.getMessage());
+            }
+        }
+        this.directory = path;
+        MetricsRegistry.gauge("cache.response.size", this::size);
+    }
+
+    /*
+     *  Only requests pinned to temperature 0 are deterministic enough to replay.
+     */
+    public boolean isCacheable(Map<String, Object> requestBody) {
+        return enabled && requestBody.get("temperature") instanceof Number temperature && temperature.doubleValue() == 0.0;
+    }
+
+    public String key(String endpoint, Map<String, Object> requestBody) {
+        Map<String, Object> canonical = new TreeMap<>(requestBody);
+        canonical.keySet().removeAll(VOLATILE_FIELDS);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(endpoint.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(mapper.writeValueAsBytes(canonical));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new IllegalStateException("key failed: " + e.getMessage(), e);
+        }
+    }
+
+    public Map<String, Object> get(String key) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (now - entry.created() <= ttlMillis) {
+                    MetricsRegistry.increment("cache.response.hit.memory");
+                    return entry.response();
+                }
+                entries.remove(key);
+            }
+        }
+        Entry entry = readDisk(key, now);
+        if (entry != null) {
+            synchronized (entries) {
+                entries.put(key, entry);
+            }
+            MetricsRegistry.increment("cache.response.hit.disk");
+            return entry.response();
+        }
+        MetricsRegistry.increment("cache.response.miss");
+        return null;
+    }
+
+    public void put(String key, Map<String, Object> response) {
+        Entry entry = new Entry(System.currentTimeMillis(), response);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+        MetricsRegistry.increment("cache.response.store");
+        writeDisk(key, entry);
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /*
+     *  Disk tier
+     */
+    private Entry readDisk(String key, long now) {
+        if (directory == null) return null;
+        Path file = directory.resolve(key + ".json");
+        if (!Files.isRegularFile(file)) return null;
+        try {
+            Map<String, Object> stored = mapper.readValue(file.toFile(), new TypeReference<Map<String, Object>>() {});
+            long created = ((Number) stored.get("created")).longValue();
+            if (now - created > ttlMillis) {
+                Files.deleteIfExists(file);
+                return null;
+            }
+            Map<String, Object> response = mapper.convertValue(stored.get("response"), new TypeReference<Map<String, Object>>() {});
+            return response == null ? null : new Entry(created, response);
+        } catch (Exception e) {
+            LOGGER.warning("Discarding unreadable response cache file " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeDisk(String key, Entry entry) {
+        if (directory == null) return;
+        Path file = directory.resolve(key + ".json");
+        try {
+            Path tmp = Files.createTempFile(directory, key, ".tmp");
+            mapper.writeValue(tmp.toFile(), Map.of("created", entry.created(), "response", entry.response()));
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warning("Failed to persist response cache entry " + key + ": " + e.getMessage());
+        }
+    }
+
+    private record Entry(long created, Map<String, Object> response) {}
+}
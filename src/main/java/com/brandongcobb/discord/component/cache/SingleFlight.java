@@ -0,0 +1,217 @@
+/*  SingleFlight.java The purpose of this class is to let identical
+ *  concurrent provider requests share one upstream call.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.cache;
+
+import com.brandongcobb.discord.Application;
+import com.brandongcobb.discord.component.executor.IoExecutor;
+import com.brandongcobb.discord.records.Delta;
+import com.brandongcobb.discord.registry.MetricsRegistry;
+import com.brandongcobb.discord.utils.inc.Helpers;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/*
+ *  Each subscriber gets its deltas and its result through its own mailbox, drained in order on the I/O executor,
+ *  so a slow consumer holds up neither the upstream reader nor the other subscribers.
+ */
+@Component
+public class SingleFlight {
+
+    private static final Logger LOGGER = Logger.getLogger(Application.class.getName());
+    private final boolean enabled = Helpers.getEnvBoolean("DISCORD_SINGLE_FLIGHT", true);
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+    private final Executor executor;
+
+    @Autowired
+    public SingleFlight(IoExecutor executor) {
+        this.executor = executor;
+        MetricsRegistry.gauge("singleflight.inflight", flights::size);
+    }
+
+    /*
+     *  The first caller for a key runs fetch; later callers join it until it completes.
+     *  Streaming and non-streaming calls never share a flight since the wire format differs.
+     */
+    public CompletableFuture<Map<String, Object>> complete(String key, Consumer<Delta> onDelta, Function<Consumer<Delta>, CompletableFuture<Map<String, Object>>> fetch) {
+        if (!enabled || key == null) return fetch.apply(onDelta);
+        String flightKey = onDelta != null ? key + ":stream" : key;
+        while (true) {
+            Flight created = new Flight(flightKey, onDelta != null);
+            Flight flight = flights.putIfAbsent(flightKey, created);
+            if (flight == null) {
+                MetricsRegistry.increment("singleflight.leader");
+                CompletableFuture<Map<String, Object>> subscription = created.subscribe(onDelta);
+                created.start(fetch);
+                return subscription;
+            }
+            CompletableFuture<Map<String, Object>> subscription = flight.subscribe(onDelta);
+            if (subscription != null) {
+                MetricsRegistry.increment("singleflight.joined");
+                LOGGER.finer("Joined in-flight request " + flightKey);
+                return subscription;
+            }
+            // The flight finished or was abandoned between lookup and subscribe.
+            flights.remove(flightKey, flight);
+        }
+    }
+
+    private final class Flight {
+
+        private final String key;
+        private final boolean streaming;
+        private final List<Delta> replay = new ArrayList<>();
+        private final List<Subscriber> subscribers = new ArrayList<>();
+        private CompletableFuture<Map<String, Object>> upstream;
+        private boolean closed = false;
+
+        private Flight(String key, boolean streaming) {
+            this.key = key;
+            this.streaming = streaming;
+        }
+
+        private void start(Function<Consumer<Delta>, CompletableFuture<Map<String, Object>>> fetch) {
+            CompletableFuture<Map<String, Object>> future;
+            try {
+                future = fetch.apply(streaming ? this::publish : null);
+            } catch (Exception e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            synchronized (this) {
+                upstream = future;
+                if (closed) future.cancel(true);
+            }
+            future.whenComplete(this::finish);
+        }
+
+        private CompletableFuture<Map<String, Object>> subscribe(Consumer<Delta> onDelta) {
+            Subscriber subscriber = new Subscriber(onDelta);
+            synchronized (this) {
+                if (closed) return null;
+                subscribers.add(subscriber);
+                // Late joiners first catch up on the deltas they missed; queued here so later deltas land behind them.
+                replay.forEach(subscriber::enqueue);
+            }
+            subscriber.schedule();
+            subscriber.result.whenComplete((response, error) -> {
+                if (subscriber.result.isCancelled()) leave(subscriber);
+            });
+            return subscriber.result;
+        }
+
+        private void publish(Delta delta) {
+            List<Subscriber> receiving;
+            synchronized (this) {
+                if (closed) return;
+                replay.add(delta);
+                receiving = new ArrayList<>(subscribers);
+                for (Subscriber subscriber : receiving) subscriber.enqueue(delta);
+            }
+            for (Subscriber subscriber : receiving) subscriber.schedule();
+        }
+
+        private void leave(Subscriber subscriber) {
+            CompletableFuture<Map<String, Object>> abandoned = null;
+            synchronized (this) {
+                if (!subscribers.remove(subscriber) || !subscribers.isEmpty() || closed) return;
+                closed = true;
+                abandoned = upstream;
+            }
+            flights.remove(key, this);
+            if (abandoned != null) abandoned.cancel(true);
+        }
+
+        private void finish(Map<String, Object> response, Throwable error) {
+            List<Subscriber> waiting;
+            synchronized (this) {
+                closed = true;
+                waiting = new ArrayList<>(subscribers);
+                subscribers.clear();
+            }
+            flights.remove(key, this);
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            for (Subscriber subscriber : waiting) {
+                // Behind any deltas still queued for this subscriber.
+                subscriber.post(() -> {
+                    if (cause != null) {
+                        subscriber.result.completeExceptionally(cause);
+                    } else {
+                        subscriber.result.complete(response);
+                    }
+                });
+            }
+        }
+    }
+
+    private final class Subscriber {
+
+        private final Consumer<Delta> onDelta;
+        private final CompletableFuture<Map<String, Object>> result = new CompletableFuture<>();
+        private final Queue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean draining = new AtomicBoolean(false);
+
+        private Subscriber(Consumer<Delta> onDelta) {
+            this.onDelta = onDelta;
+        }
+
+        private void enqueue(Delta delta) {
+            if (onDelta == null) return;
+            mailbox.add(() -> {
+                if (!result.isDone()) onDelta.accept(delta);
+            });
+        }
+
+        private void post(Runnable task) {
+            mailbox.add(task);
+            schedule();
+        }
+
+        private void schedule() {
+            if (!mailbox.isEmpty() && draining.compareAndSet(false, true)) executor.execute(this::drain);
+        }
+
+        private void drain() {
+            do {
+                Runnable task;
+                while ((task = mailbox.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        LOGGER.warning("Single-flight subscriber failed: " + e.getMessage());
+                    }
+                }
+                draining.set(false);
+                // A post that raced with the last poll must not be stranded.
+            } while (!mailbox.isEmpty() && draining.compareAndSet(false, true));
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*  IoExecutor.java The purpose of this class is to run blocking provider,
+ *  Discord and tool I/O off the common pool, on virtual threads by default.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.executor;
+
+import com.brandongcobb.discord.Application;
+import com.brandongcobb.discord.registry.MetricsRegistry;
+import com.brandongcobb.discord.utils.inc.Helpers;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+@Component
+public class IoExecutor implements Executor {
+
+    private static final Logger LOGGER = Logger.getLogger(Application.class.getName());
+    private static final String NAME = "io";
+    private final ExecutorService delegate;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /*
+     *  DISCORD_IO_VIRTUAL=false falls back to a fixed platform pool of DISCORD_IO_THREADS.
+     */
+    public IoExecutor() {
+        if (Helpers.getEnvBoolean("DISCORD_IO_VIRTUAL", true)) {
+            this.delegate = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("discord-io-", 0).factory());
+            LOGGER.finer("Blocking I/O runs on virtual threads");
+        } else {
+            int threads = Helpers.getEnvInt("DISCORD_IO_THREADS", 32);
+            this.delegate = Executors.newFixedThreadPool(threads, Thread.ofPlatform().name("discord-io-", 0).daemon(true).factory());
+            LOGGER.finer("Blocking I/O runs on " + threads + " platform threads");
+        }
+        MetricsRegistry.gauge("executor." + NAME + ".active", active::get);
+        MetricsRegistry.gauge("executor." + NAME + ".queued", queued::get);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        long submitted = System.nanoTime();
+        queued.incrementAndGet();
+        MetricsRegistry.increment("executor." + NAME + ".submitted");
+        delegate.execute(() -> {
+            long started = System.nanoTime();
+            queued.decrementAndGet();
+            active.incrementAndGet();
+            MetricsRegistry.record("executor." + NAME + ".wait", started - submitted);
+            try {
+                task.run();
+            } finally {
+                active.decrementAndGet();
+                MetricsRegistry.record("executor." + NAME + ".run", System.nanoTime() - started);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        delegate.shutdown();
+        try {
+            if (!delegate.awaitTermination(5, TimeUnit.SECONDS)) delegate.shutdownNow();
+        } catch (InterruptedException e) {
+            delegate.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
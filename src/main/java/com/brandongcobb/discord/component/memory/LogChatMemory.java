@@ -0,0 +1,706 @@
+/*  LogChatMemory.java The purpose of this class is to keep chat memory in
+ *  an append-only segmented log on disk, indexed in memory by conversation,
+ *  so conversations survive a restart.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.memory;
+
+import com.brandongcobb.discord.Application;
+import com.brandongcobb.discord.registry.MetricsRegistry;
+import com.brandongcobb.discord.utils.inc.Helpers;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/*
+ *  Layout:
+ *      <id>.log        segments of [int length][int crc32][byte op][short id length][id][message json] records,
+ *                      memory-mapped and preallocated to DISCORD_MEMORY_SEGMENT_BYTES (64 MiB); a zero length ends one.
+ *      index.snapshot  every segment's end and live bytes, and every conversation's record locations, as of a
+ *                      checkpoint position in the log.
+ *  Restart maps the snapshot and replays only the log written after its checkpoint, so it costs a bulk read of
+ *  the index rather than a parse of every message. Without a usable snapshot every segment is replayed.
+ *
+ *  Clearing a conversation appends a tombstone. A compaction summary is one record carrying how many of the newest
+ *  messages it keeps; it replaces everything older, and get always returns it first, even once it falls out of the window.
+ *  Once DISCORD_MEMORY_COMPACT_PERCENT (50) of the log is dead,
+ *  compaction copies the live records into new segments numbered just below the active one and deletes the old.
+ *  get returns the newest DISCORD_MEMORY_WINDOW (20) messages, the same window MessageWindowChatMemory kept.
+ *  Checkpoints and fsyncs run every DISCORD_MEMORY_CHECKPOINT_MS (30 s), compaction checks every
+ *  DISCORD_MEMORY_COMPACT_MS (10 minutes); a crash loses nothing the OS already has, a power cut at most one interval.
+ */
+public class LogChatMemory implements ChatMemory, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(Application.class.getName());
+    private static final int SNAPSHOT_MAGIC = 0x434D4958;
+    private static final int SNAPSHOT_VERSION = 2;
+    private static final String SNAPSHOT = "index.snapshot";
+    private static final int HEADER = 8;
+    private static final byte ADD = 1;
+    private static final byte CLEAR = 2;
+    private static final byte SUMMARY = 3;
+    private static final long ID_STEP = 1L << 16;
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+    private final MessageCodec codec = new MessageCodec();
+    private final Path directory;
+    private final int segmentBytes = Helpers.getEnvInt("DISCORD_MEMORY_SEGMENT_BYTES", 64 << 20);
+    private final int window = Helpers.getEnvInt("DISCORD_MEMORY_WINDOW", 20);
+    private final int compactPercent = Helpers.getEnvInt("DISCORD_MEMORY_COMPACT_PERCENT", 50);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object compaction = new Object();
+    private final Object checkpoints = new Object();
+    private final Map<String, Locations> index = new HashMap<>();
+    private final List<Segment> slots = new ArrayList<>();
+    private final ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("discord-memory-maintenance").daemon(true).factory());
+    private Segment active;
+    private long version = 0L;
+    private volatile long checkpointed = -1L;
+
+    public LogChatMemory(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        long started = System.nanoTime();
+        recover();
+        MetricsRegistry.record("memory.recovery", System.nanoTime() - started);
+        LOGGER.info("Chat memory recovered " + index.size() + " conversation(s) from " + directory + " in "
+            + (System.nanoTime() - started) / 1_000_000 + "ms");
+        MetricsRegistry.gauge("memory.conversations", this::size);
+        long checkpointMillis = Helpers.getEnvInt("DISCORD_MEMORY_CHECKPOINT_MS", 30_000);
+        long compactMillis = Helpers.getEnvInt("DISCORD_MEMORY_COMPACT_MS", 600_000);
+        maintenance.scheduleWithFixedDelay(this::checkpointQuietly, checkpointMillis, checkpointMillis, TimeUnit.MILLISECONDS);
+        maintenance.scheduleWithFixedDelay(this::compactQuietly, compactMillis, compactMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        if (messages.isEmpty()) return;
+        byte[] id = conversationId.getBytes(StandardCharsets.UTF_8);
+        List<byte[]> payloads = new ArrayList<>(messages.size());
+        for (Message message : messages) payloads.add(codec.encode(message));
+        lock.writeLock().lock();
+        try {
+            Locations locations = index.computeIfAbsent(conversationId, k -> new Locations());
+            for (byte[] payload : payloads) {
+                locations.add(append(ADD, id, payload));
+            }
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        MetricsRegistry.increment("memory.appended", messages.size());
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        lock.readLock().lock();
+        try {
+            Locations locations = index.get(conversationId);
+            if (locations == null) return new ArrayList<>();
+            List<Message> messages = new ArrayList<>(Math.min(window, locations.size));
+            int from = Math.max(0, locations.size - window);
+            if (from > 0 && op(locations.items[0]) == SUMMARY) {
+                // Without the summary the window would start mid-conversation with nothing before it.
+                messages.add(codec.decode(payload(locations.items[0])));
+                from++;
+            }
+            for (int i = from; i < locations.size; i++) {
+                messages.add(codec.decode(payload(locations.items[i])));
+            }
+            return messages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        lock.writeLock().lock();
+        try {
+            Locations removed = index.remove(conversationId);
+            if (removed == null) return;
+            for (int i = 0; i < removed.size; i++) release(removed.items[i]);
+            append(CLEAR, conversationId.getBytes(StandardCharsets.UTF_8), new byte[0]);
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        MetricsRegistry.increment("memory.cleared");
+    }
+
+    /*
+     *  Replaces all but the newest keep messages with the summary, in a single record.
+     */
+    public void summarize(String conversationId, Message summary, int keep) {
+        byte[] message = codec.encode(summary);
+        byte[] payload = ByteBuffer.allocate(4 + message.length).putInt(keep).put(message).array();
+        lock.writeLock().lock();
+        try {
+            Locations locations = index.computeIfAbsent(conversationId, k -> new Locations());
+            summarize(locations, append(SUMMARY, conversationId.getBytes(StandardCharsets.UTF_8), payload), keep);
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        MetricsRegistry.increment("memory.summarized");
+    }
+
+    /*
+     *  Writes the index snapshot and flushes the active segment; a no-op when nothing changed.
+     *  Checkpoints run one at a time so they never share index.snapshot.tmp; appends only wait out the read lock.
+     */
+    public void checkpoint() throws IOException {
+        synchronized (checkpoints) {
+            lock.readLock().lock();
+            try {
+                long seen = version;
+                if (seen == checkpointed) return;
+                active.buffer.force();
+                writeSnapshot();
+                checkpointed = seen;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    /*
+     *  Rewrites the live records when enough of the log is dead; returns the bytes reclaimed.
+     */
+    public long compact() throws IOException {
+        synchronized (compaction) {
+            List<Segment> victims;
+            Segment[] sources;
+            List<Copy> copies = new ArrayList<>();
+            long lastId;
+            lock.writeLock().lock();
+            try {
+                long total = 0L;
+                long live = 0L;
+                for (Segment segment : slots) {
+                    if (segment == null) continue;
+                    total += segment.position;
+                    live += segment.live;
+                }
+                if (total < segmentBytes || (total - live) * 100 < total * compactPercent) return 0L;
+                // Seal everything written so far; new appends land in a fresh segment the copy never touches.
+                lastId = active.id;
+                roll(0);
+                sources = slots.toArray(new Segment[0]);
+                victims = new ArrayList<>();
+                for (Segment segment : slots) {
+                    if (segment != null && segment != active) victims.add(segment);
+                }
+                for (Map.Entry<String, Locations> entry : index.entrySet()) {
+                    Locations locations = entry.getValue();
+                    copies.add(new Copy(entry.getKey(), locations, Arrays.copyOf(locations.items, locations.size), locations.summaries));
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            List<Segment> outputs = new ArrayList<>();
+            Segment output = null;
+            long written = 0L;
+            for (Copy copy : copies) {
+                copy.moved = new long[copy.sources.length];
+                for (int i = 0; i < copy.sources.length; i++) {
+                    Segment source = sources[(int) (copy.sources[i] >>> OFFSET_BITS)];
+                    int offset = offset(copy.sources[i]);
+                    int size = HEADER + source.buffer.getInt(offset);
+                    if (output == null || output.position + size > output.capacity) {
+                        if (output != null) output.buffer.force();
+                        if (outputs.size() + 1 >= ID_STEP) throw new IOException("compaction output exceeds " + (ID_STEP - 1) + " segments");
+                        output = Segment.create(directory, lastId + outputs.size() + 1, Math.max(segmentBytes, size));
+                        outputs.add(output);
+                    }
+                    byte[] record = new byte[size];
+                    source.buffer.get(offset, record);
+                    output.buffer.put(output.position, record);
+                    copy.moved[i] = ((long) (outputs.size() - 1) << OFFSET_BITS) | output.position;
+                    output.position += size;
+                    written += size;
+                }
+            }
+            if (output != null) output.buffer.force();
+            long reclaimed = 0L;
+            lock.writeLock().lock();
+            try {
+                int base = slots.size();
+                for (Segment segment : outputs) slots.add(segment);
+                for (Copy copy : copies) {
+                    // Cleared during the copy: its copied records are dead on arrival.
+                    if (index.get(copy.id) != copy.locations) continue;
+                    if (copy.locations.summaries == copy.summaries) {
+                        for (int i = 0; i < copy.moved.length; i++) {
+                            copy.locations.items[i] = moveTo(base, copy.moved[i]);
+                        }
+                        continue;
+                    }
+                    // Summarized during the copy: the survivors shifted, so find them by their old location.
+                    Map<Long, Long> moves = new HashMap<>();
+                    for (int i = 0; i < copy.moved.length; i++) moves.put(copy.sources[i], copy.moved[i]);
+                    for (int i = 0; i < copy.locations.size; i++) {
+                        Long moved = moves.get(copy.locations.items[i]);
+                        if (moved != null) copy.locations.items[i] = moveTo(base, moved);
+                    }
+                }
+                for (Segment victim : victims) {
+                    reclaimed += victim.position;
+                    slots.set(slots.indexOf(victim), null);
+                }
+                reclaimed -= written;
+                version++;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            // The snapshot must name the new segments before the old ones disappear.
+            checkpoint();
+            for (Segment victim : victims) victim.delete();
+            MetricsRegistry.increment("memory.compactions");
+            MetricsRegistry.increment("memory.compacted_bytes", Math.max(0L, reclaimed));
+            LOGGER.fine("Compacted chat memory: " + victims.size() + " segment(s) into " + outputs.size() + ", reclaimed " + reclaimed + " bytes");
+            return reclaimed;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        maintenance.shutdownNow();
+        synchronized (compaction) {
+            checkpoint();
+            lock.writeLock().lock();
+            try {
+                for (Segment segment : slots) {
+                    if (segment != null) segment.close();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /*
+     *  Getters
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /*
+     *  Log
+     */
+    private long append(byte op, byte[] id, byte[] payload) {
+        int body = 1 + 2 + id.length + payload.length;
+        ByteBuffer record = ByteBuffer.allocate(HEADER + body);
+        record.putInt(body).putInt(0).put(op).putShort((short) id.length).put(id).put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER, body);
+        record.putInt(4, (int) crc.getValue());
+        if (active.position + record.capacity() > active.capacity) roll(record.capacity());
+        long location = location(active.slot, active.position);
+        active.buffer.put(active.position, record.array());
+        active.position += record.capacity();
+        if (op != CLEAR) active.live += record.capacity();
+        return location;
+    }
+
+    /*
+     *  The message json of an ADD or SUMMARY record.
+     */
+    private byte[] payload(long location) {
+        Segment segment = slots(location);
+        int offset = offset(location);
+        int body = segment.buffer.getInt(offset);
+        int idLength = segment.buffer.getShort(offset + HEADER + 1);
+        int skip = segment.buffer.get(offset + HEADER) == SUMMARY ? 4 : 0;
+        int start = offset + HEADER + 3 + idLength + skip;
+        byte[] payload = new byte[body - 3 - idLength - skip];
+        segment.buffer.get(start, payload);
+        return payload;
+    }
+
+    private byte op(long location) {
+        return slots(location).buffer.get(offset(location) + HEADER);
+    }
+
+    private void summarize(Locations locations, long summary, int keep) {
+        int kept = Math.min(Math.max(0, keep), locations.size);
+        int dropped = locations.size - kept;
+        for (int i = 0; i < dropped; i++) release(locations.items[i]);
+        long[] items = new long[Math.max(8, kept + 1)];
+        items[0] = summary;
+        System.arraycopy(locations.items, dropped, items, 1, kept);
+        locations.items = items;
+        locations.size = kept + 1;
+        locations.summaries++;
+    }
+
+    private long moveTo(int base, long moved) {
+        int slot = base + (int) (moved >>> OFFSET_BITS);
+        Segment target = slots.get(slot);
+        target.live += HEADER + target.buffer.getInt(offset(moved));
+        return location(slot, offset(moved));
+    }
+
+    private void release(long location) {
+        Segment segment = slots(location);
+        segment.live -= HEADER + segment.buffer.getInt(offset(location));
+    }
+
+    private void roll(int needed) {
+        try {
+            long id = (active == null ? 0L : active.id / ID_STEP + 1) * ID_STEP;
+            Segment next = Segment.create(directory, id, Math.max(segmentBytes, needed));
+            if (active != null) active.buffer.force();
+            next.slot = slots.size();
+            slots.add(next);
+            active = next;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot roll chat memory segment: " + e.getMessage(), e);
+        }
+    }
+
+    /*
+     *  Replays records from the given offset until the first empty or torn one; returns where the log ends.
+     */
+    private int replay(Segment segment, int from) {
+        MappedByteBuffer buffer = segment.buffer;
+        CRC32 crc = new CRC32();
+        int offset = from;
+        while (offset + HEADER <= segment.capacity) {
+            int body = buffer.getInt(offset);
+            if (body < 3 || offset + HEADER + body > segment.capacity) break;
+            crc.reset();
+            crc.update(buffer.slice(offset + HEADER, body));
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                LOGGER.warning("Chat memory segment " + segment.id + " ends in a torn record at " + offset);
+                break;
+            }
+            byte op = buffer.get(offset + HEADER);
+            byte[] id = new byte[buffer.getShort(offset + HEADER + 1)];
+            buffer.get(offset + HEADER + 3, id);
+            String conversationId = new String(id, StandardCharsets.UTF_8);
+            if (op == ADD) {
+                index.computeIfAbsent(conversationId, k -> new Locations()).add(location(segment.slot, offset));
+                segment.live += HEADER + body;
+            } else if (op == CLEAR) {
+                Locations removed = index.remove(conversationId);
+                if (removed != null) {
+                    for (int i = 0; i < removed.size; i++) release(removed.items[i]);
+                }
+            } else if (op == SUMMARY) {
+                Locations locations = index.computeIfAbsent(conversationId, k -> new Locations());
+                segment.live += HEADER + body;
+                summarize(locations, location(segment.slot, offset), buffer.getInt(offset + HEADER + 3 + id.length));
+            }
+            offset += HEADER + body;
+        }
+        return offset;
+    }
+
+    /*
+     *  Recovery
+     */
+    private void recover() throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (Stream<Path> listing = Files.list(directory)) {
+            listing.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".log")) {
+                    files.put(Long.parseLong(name.substring(0, name.length() - 4)), file);
+                } else if (name.endsWith(".tmp")) {
+                    try {
+                        Files.deleteIfExists(file);
+                    } catch (IOException ignored) {
+                    }
+                }
+            });
+        }
+        if (!recoverFromSnapshot(files)) {
+            index.clear();
+            slots.clear();
+            for (Map.Entry<Long, Path> file : files.entrySet()) {
+                Segment segment = Segment.open(file.getValue(), file.getKey());
+                segment.slot = slots.size();
+                slots.add(segment);
+                segment.position = replay(segment, 0);
+            }
+        }
+        active = null;
+        for (Segment segment : slots) {
+            if (segment != null && (active == null || segment.id > active.id)) active = segment;
+        }
+        if (active == null) roll(0);
+    }
+
+    private boolean recoverFromSnapshot(TreeMap<Long, Path> files) {
+        Path path = directory.resolve(SNAPSHOT);
+        if (!Files.isRegularFile(path)) return false;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int end = buffer.capacity() - 8;
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice(0, end));
+            if (end < 24 || buffer.getInt(0) != SNAPSHOT_MAGIC || buffer.getInt(4) != SNAPSHOT_VERSION || buffer.getLong(end) != crc.getValue()) {
+                LOGGER.warning("Ignoring unreadable chat memory snapshot");
+                return false;
+            }
+            buffer.position(8);
+            long checkpointId = buffer.getLong();
+            int checkpointOffset = buffer.getInt();
+            int fileCount = buffer.getInt();
+            Map<Long, Integer> known = new HashMap<>();
+            for (int slot = 0; slot < fileCount; slot++) {
+                long id = buffer.getLong();
+                long live = buffer.getLong();
+                int position = buffer.getInt();
+                Path file = files.get(id);
+                if (file == null) {
+                    LOGGER.warning("Chat memory snapshot names missing segment " + id);
+                    return false;
+                }
+                Segment segment = Segment.open(file, id);
+                segment.slot = slot;
+                segment.live = live;
+                segment.position = position;
+                slots.add(segment);
+                known.put(id, slot);
+            }
+            int conversations = buffer.getInt();
+            for (int i = 0; i < conversations; i++) {
+                byte[] id = new byte[buffer.getShort()];
+                buffer.get(id);
+                Locations locations = new Locations(buffer.getInt());
+                buffer.asLongBuffer().get(locations.items, 0, locations.items.length);
+                buffer.position(buffer.position() + locations.items.length * 8);
+                locations.size = locations.items.length;
+                index.put(new String(id, StandardCharsets.UTF_8), locations);
+            }
+            for (Map.Entry<Long, Path> file : files.entrySet()) {
+                long id = file.getKey();
+                Integer slot = known.get(id);
+                if (slot == null && (id < checkpointId || id % ID_STEP != 0)) {
+                    // Left behind by a compaction that finished (old segment) or never got its snapshot (new segment).
+                    Files.deleteIfExists(file.getValue());
+                    continue;
+                }
+                if (id < checkpointId) continue;
+                Segment segment;
+                if (slot == null) {
+                    segment = Segment.open(file.getValue(), id);
+                    segment.slot = slots.size();
+                    slots.add(segment);
+                } else {
+                    segment = slots.get(slot);
+                }
+                segment.position = replay(segment, id == checkpointId ? checkpointOffset : 0);
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warning("Chat memory snapshot unusable, replaying the whole log: " + e.getMessage());
+            for (Segment segment : slots) {
+                if (segment != null) segment.close();
+            }
+            return false;
+        }
+    }
+
+    /*
+     *  Callers hold at least the read lock.
+     */
+    private void writeSnapshot() throws IOException {
+        int[] remap = new int[slots.size()];
+        int fileCount = 0;
+        for (int slot = 0; slot < slots.size(); slot++) {
+            remap[slot] = slots.get(slot) == null ? -1 : fileCount++;
+        }
+        List<byte[]> ids = new ArrayList<>(index.size());
+        long size = 8 + 8 + 4 + 4 + 20L * fileCount + 4 + 8;
+        for (Map.Entry<String, Locations> entry : index.entrySet()) {
+            byte[] id = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            ids.add(id);
+            size += 2 + id.length + 4 + 8L * entry.getValue().size;
+        }
+        if (size > Integer.MAX_VALUE) throw new IOException("chat memory snapshot too large: " + size + " bytes");
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putLong(active.id).putInt(active.position).putInt(fileCount);
+        for (Segment segment : slots) {
+            if (segment != null) buffer.putLong(segment.id).putLong(segment.live).putInt(segment.position);
+        }
+        buffer.putInt(index.size());
+        int i = 0;
+        for (Locations locations : index.values()) {
+            byte[] id = ids.get(i++);
+            buffer.putShort((short) id.length).put(id).putInt(locations.size);
+            for (int j = 0; j < locations.size; j++) {
+                long location = locations.items[j];
+                buffer.putLong(location(remap[(int) (location >>> OFFSET_BITS)], offset(location)));
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putLong(crc.getValue());
+        Path tmp = directory.resolve(SNAPSHOT + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(true);
+        }
+        Files.move(tmp, directory.resolve(SNAPSHOT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /*
+     *  Helpers
+     */
+    private void checkpointQuietly() {
+        try {
+            checkpoint();
+        } catch (Exception e) {
+            LOGGER.warning("Chat memory checkpoint failed: " + e.getMessage());
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (Exception e) {
+            LOGGER.warning("Chat memory compaction failed: " + e.getMessage());
+        }
+    }
+
+    private Segment slots(long location) {
+        return slots.get((int) (location >>> OFFSET_BITS));
+    }
+
+    private static long location(int slot, int offset) {
+        return ((long) slot << OFFSET_BITS) | offset;
+    }
+
+    private static int offset(long location) {
+        return (int) (location & OFFSET_MASK);
+    }
+
+    private static final class Copy {
+
+        private final String id;
+        private final Locations locations;
+        private final long[] sources;
+        private final int summaries;
+        private long[] moved;
+
+        private Copy(String id, Locations locations, long[] sources, int summaries) {
+            this.id = id;
+            this.locations = locations;
+            this.sources = sources;
+            this.summaries = summaries;
+        }
+    }
+
+    private static final class Locations {
+
+        private long[] items;
+        private int size = 0;
+        private int summaries = 0;
+
+        private Locations() {
+            this(8);
+        }
+
+        private Locations(int capacity) {
+            this.items = new long[capacity];
+        }
+
+        private void add(long location) {
+            if (size == items.length) items = Arrays.copyOf(items, Math.max(8, size * 2));
+            items[size++] = location;
+        }
+    }
+
+    private static final class Segment {
+
+        private final long id;
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private int slot;
+        private int position = 0;
+        private long live = 0L;
+
+        private Segment(long id, Path file, FileChannel channel, int capacity) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.capacity = capacity;
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+
+        private static Segment create(Path directory, long id, int capacity) throws IOException {
+            Path file = directory.resolve(String.format("%020d.log", id));
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(id, file, channel, capacity);
+        }
+
+        private static Segment open(Path file, long id) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(id, file, channel, (int) Math.min(Integer.MAX_VALUE, channel.size()));
+        }
+
+        private void close() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        private void delete() {
+            close();
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOGGER.warning("Could not delete compacted chat memory segment " + file + ": " + e.getMessage());
+            }
+        }
+    }
+}
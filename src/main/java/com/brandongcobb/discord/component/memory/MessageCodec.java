@@ -0,0 +1,109 @@
+/*  MessageCodec.java The purpose of this class is to turn chat messages
+ *  into compact JSON bytes for the memory log and back again.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.memory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/*
+ *  Text, tool calls and tool responses survive the round trip; message metadata and media do not.
+ */
+public class MessageCodec {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public byte[] encode(Message message) {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("type", message.getMessageType().name());
+        if (message instanceof ToolResponseMessage toolMsg) {
+            ArrayNode responses = node.putArray("responses");
+            for (ToolResponseMessage.ToolResponse response : toolMsg.getResponses()) {
+                responses.addObject()
+                    .put("id", response.id())
+                    .put("name", response.name())
+                    .put("data", response.responseData());
+            }
+        } else {
+            node.put("text", message.getText());
+        }
+        if (message instanceof AssistantMessage assistantMsg && assistantMsg.hasToolCalls()) {
+            ArrayNode calls = node.putArray("toolCalls");
+            for (AssistantMessage.ToolCall call : assistantMsg.getToolCalls()) {
+                calls.addObject()
+                    .put("id", call.id())
+                    .put("type", call.type())
+                    .put("name", call.name())
+                    .put("arguments", call.arguments());
+            }
+        }
+        try {
+            return mapper.writeValueAsBytes(node);
+        } catch (IOException e) {
+            throw new IllegalStateException("encode failed: " + e.getMessage(), e);
+        }
+    }
+
+    public Message decode(byte[] bytes) {
+        JsonNode node;
+        try {
+            node = mapper.readTree(bytes);
+        } catch (IOException e) {
+            throw new IllegalStateException("decode failed: " + e.getMessage(), e);
+        }
+        String text = node.path("text").isNull() ? null : node.path("text").asText(null);
+        return switch (node.path("type").asText()) {
+            case "ASSISTANT" -> {
+                List<AssistantMessage.ToolCall> calls = new ArrayList<>();
+                for (JsonNode call : node.path("toolCalls")) {
+                    calls.add(new AssistantMessage.ToolCall(text(call, "id"), text(call, "type"), text(call, "name"), text(call, "arguments")));
+                }
+                yield new AssistantMessage(text, Map.of(), calls);
+            }
+            case "TOOL" -> {
+                List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>();
+                for (JsonNode response : node.path("responses")) {
+                    responses.add(new ToolResponseMessage.ToolResponse(text(response, "id"), text(response, "name"), text(response, "data")));
+                }
+                yield new ToolResponseMessage(responses);
+            }
+            case "SYSTEM" -> new SystemMessage(text == null ? "" : text);
+            default -> new UserMessage(text == null ? "" : text);
+        };
+    }
+
+    /*
+     *  Helpers
+     */
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+}
@@ -0,0 +1,236 @@
+/*  AbstractProviderAdapter.java The purpose of this class is to share the HTTP,
+ *  streaming and error handling common to every provider adapter.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.provider;
+
+import com.brandongcobb.discord.Application;
+import com.brandongcobb.discord.component.transport.AdaptiveLimiter;
+import com.brandongcobb.discord.component.transport.ChatCompletionChunkParser;
+import com.brandongcobb.discord.component.transport.ProviderTransport;
+import com.brandongcobb.discord.component.transport.SSEDecoder;
+import com.brandongcobb.discord.records.Delta;
+import com.brandongcobb.discord.records.TokenUsage;
+import com.brandongcobb.discord.records.ToolCall;
+import com.brandongcobb.discord.registry.MetricsRegistry;
+import com.brandongcobb.metadata.Metadata;
+import com.brandongcobb.metadata.MetadataContainer;
+import com.brandongcobb.metadata.MetadataKey;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.Header;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public abstract class AbstractProviderAdapter implements ProviderAdapter {
+
+    protected static final Logger LOGGER = Logger.getLogger(Application.class.getName());
+    private static final Pattern RESET_DURATION = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|s|m|h)");
+    protected final ObjectMapper mapper = new ObjectMapper();
+    private final ProviderTransport transport;
+
+    protected AbstractProviderAdapter(ProviderTransport transport) {
+        this.transport = transport;
+    }
+
+    /*
+     *  Returns the environment variable holding the bearer token, or null when the provider needs none.
+     */
+    protected String getApiKeyEnv() {
+        return null;
+    }
+
+    @Override
+    public void authorize(HttpPost post) {
+        String apiKeyEnv = getApiKeyEnv();
+        if (apiKeyEnv == null) return;
+        String apiKey = System.getenv(apiKeyEnv);
+        if (apiKey == null || apiKey.isEmpty()) {
+            throw new IllegalStateException("authorize failed: Missing " + apiKeyEnv + ". Provider option `" + getName() + "` will not work.");
+        }
+        post.setHeader("Authorization", "Bearer " + apiKey);
+    }
+
+    /*
+     *  Streamed responses arrive folded into a chat completion, so the content is lifted out when the container skipped it.
+     *  Tool calls land under "tool_calls" as List<ToolCall>, empty when the model answered in text.
+     *  Prompt and cached token counts are copied from usage for every provider.
+     */
+    @Override
+    public MetadataContainer toContainer(Map<String, Object> response) {
+        MetadataContainer container = createContainer(response);
+        MetadataKey<String> contentKey = new MetadataKey<>("content", Metadata.STRING);
+        if (container.get(contentKey) == null && response.get("choices") instanceof List<?> choices && !choices.isEmpty()
+                && choices.get(0) instanceof Map<?, ?> choice && choice.get("message") instanceof Map<?, ?> message
+                && message.get("content") instanceof String content) {
+            container.put(contentKey, content);
+        }
+        ToolCallExtractor.Extraction extraction = ToolCallExtractor.extract(response, mapper);
+        if (extraction.content() != null) container.put(contentKey, extraction.content());
+        container.put(new MetadataKey<>("tool_calls", Metadata.ANY), extraction.toolCalls());
+        TokenUsage usage = TokenUsage.from(response);
+        if (usage != null) {
+            container.put(new MetadataKey<>("prompt_tokens", Metadata.LONG), usage.promptTokens());
+            container.put(new MetadataKey<>("cached_tokens", Metadata.LONG), usage.cachedTokens());
+        }
+        return container;
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Object>> completeFetchResponse(Map<String, Object> requestBody, String endpoint, Consumer<Delta> onDelta) {
+        HttpPost post = new HttpPost(endpoint);
+        authorize(post);
+        String provider = getName();
+        AdaptiveLimiter limiter = transport.getLimiter(endpoint);
+        CompletableFuture<AdaptiveLimiter.Permit> permitFuture = limiter.acquire();
+        CompletableFuture<Map<String, Object>> future = permitFuture.thenApplyAsync(permit -> {
+            AdaptiveLimiter.Outcome outcome = AdaptiveLimiter.Outcome.IGNORED;
+            try {
+                CloseableHttpClient client = transport.getClient(provider);
+                post.setHeader("Content-Type", "application/json");
+                post.setEntity(new ByteArrayEntity(mapper.writeValueAsBytes(requestBody), ContentType.APPLICATION_JSON));
+                boolean streaming = onDelta != null || Boolean.TRUE.equals(requestBody.get("stream"));
+                long started = System.nanoTime();
+                try (CloseableHttpResponse resp = client.execute(post)) {
+                    int code = resp.getStatusLine().getStatusCode();
+                    if (code < 200 || code >= 300) {
+                        String responseBody = EntityUtils.toString(resp.getEntity(), StandardCharsets.UTF_8);
+                        long retryAfter = parseRetryAfter(resp.getFirstHeader("Retry-After"));
+                        if (code == 429 || code == 503) {
+                            outcome = AdaptiveLimiter.Outcome.DROPPED;
+                            limiter.blockFor(Math.max(retryAfter, parseRateLimitReset(resp)));
+                            MetricsRegistry.increment("ai." + provider + ".throttled");
+                        }
+                        throw new ProviderHttpException(provider, code, retryAfter, responseBody);
+                    }
+                    limiter.blockFor(parseRateLimitReset(resp));
+                    if (!streaming) {
+                        String responseBody = EntityUtils.toString(resp.getEntity(), StandardCharsets.UTF_8);
+                        LOGGER.finer(responseBody);
+                        MetricsRegistry.record("ai." + provider + ".latency", System.nanoTime() - started);
+                        outcome = AdaptiveLimiter.Outcome.SUCCESS;
+                        return mapper.readValue(responseBody, new TypeReference<Map<String, Object>>() {});
+                    }
+                    Map<String, Object> folded = decodeStream(resp, onDelta, started);
+                    if (folded == null) {
+                        throw new IllegalStateException("completeFetchResponse failed: " + provider + " sent no valid chunk.");
+                    }
+                    outcome = AdaptiveLimiter.Outcome.SUCCESS;
+                    return folded;
+                }
+            } catch (Exception e) {
+                if (post.isAborted()) {
+                    throw new CancellationException("completeFetchResponse cancelled: " + provider);
+                }
+                throw new CompletionException("completeFetchResponse failed: " + e.getMessage(), e);
+            } finally {
+                permit.release(outcome);
+            }
+        }, transport.getExecutor());
+        future.whenComplete((result, error) -> {
+            if (!future.isCancelled()) return;
+            post.abort();
+            // A permit granted after the caller gave up still has to go back to the limiter.
+            permitFuture.cancel(true);
+            permitFuture.thenAccept(permit -> permit.release(AdaptiveLimiter.Outcome.IGNORED));
+        });
+        return future;
+    }
+
+    private static long parseRetryAfter(Header header) {
+        if (header == null) return 0L;
+        String value = header.getValue().trim();
+        try {
+            return Long.parseLong(value) * 1000L;
+        } catch (NumberFormatException e) {
+            try {
+                return Math.max(0L, ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli() - System.currentTimeMillis());
+            } catch (DateTimeParseException ignored) {
+                return 0L;
+            }
+        }
+    }
+
+    /*
+     *  OpenAI-style headers: once x-ratelimit-remaining-requests hits 0, wait out x-ratelimit-reset-requests ("1s", "6m0s", "20ms").
+     */
+    private static long parseRateLimitReset(CloseableHttpResponse resp) {
+        Header remaining = resp.getFirstHeader("x-ratelimit-remaining-requests");
+        Header reset = resp.getFirstHeader("x-ratelimit-reset-requests");
+        if (remaining == null || reset == null || !"0".equals(remaining.getValue().trim())) return 0L;
+        Matcher matcher = RESET_DURATION.matcher(reset.getValue().trim());
+        double millis = 0;
+        while (matcher.find()) {
+            double amount = Double.parseDouble(matcher.group(1));
+            millis += switch (matcher.group(2)) {
+                case "ms" -> amount;
+                case "s" -> amount * 1000;
+                case "m" -> amount * 60_000;
+                default -> amount * 3_600_000;
+            };
+        }
+        return (long) Math.ceil(millis);
+    }
+
+    /*
+     *  Streams SSE frames off the socket as they arrive; the body is never buffered whole.
+     */
+    private Map<String, Object> decodeStream(CloseableHttpResponse resp, Consumer<Delta> onDelta, long started) throws IOException {
+        String provider = getName();
+        ChatCompletionChunkParser chunkParser = new ChatCompletionChunkParser(mapper);
+        long[] firstToken = {0L};
+        try (InputStream in = resp.getEntity().getContent()) {
+            new SSEDecoder(in).decode((buf, offset, length) -> {
+                String content = chunkParser.parse(buf, offset, length);
+                List<ToolCall> toolCalls = chunkParser.drainToolCalls();
+                if (content != null || !toolCalls.isEmpty()) {
+                    if (firstToken[0] == 0L) {
+                        firstToken[0] = System.nanoTime();
+                        MetricsRegistry.record("ai." + provider + ".ttft", firstToken[0] - started);
+                    }
+                    if (onDelta != null) {
+                        if (content != null) onDelta.accept(Delta.of(content));
+                        // Arguments are complete here even though the stream is not, so callers may start the tool early.
+                        for (ToolCall toolCall : toolCalls) onDelta.accept(Delta.tool(toolCall));
+                    }
+                }
+            });
+        }
+        MetricsRegistry.record("ai." + provider + ".latency", System.nanoTime() - started);
+        return chunkParser.getChunks() == 0 ? null : chunkParser.toResponseMap();
+    }
+}
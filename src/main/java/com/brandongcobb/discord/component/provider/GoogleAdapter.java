@@ -0,0 +1,70 @@
+/*  GoogleAdapter.java The purpose of this class is to adapt Google Gemini (OpenAI compatible) requests
+ *  to the shared provider pipeline.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.provider;
+
+import com.brandongcobb.discord.component.transport.ProviderTransport;
+import com.brandongcobb.discord.objects.OpenAIContainer;
+import com.brandongcobb.discord.registry.ModelRegistry;
+import com.brandongcobb.metadata.MetadataContainer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+@Component
+public class GoogleAdapter extends AbstractProviderAdapter {
+
+    @Autowired
+    public GoogleAdapter(ProviderTransport transport) {
+        super(transport);
+    }
+
+    @Override
+    public String getName() {
+        return "google";
+    }
+
+    @Override
+    public Collection<String> getEndpoints() {
+        Set<String> endpoints = new LinkedHashSet<>();
+        endpoints.addAll(ModelRegistry.GOOGLE_ENDPOINT_URLS.values());
+        endpoints.addAll(ModelRegistry.GOOGLE_CLI_ENDPOINT_URLS.values());
+        endpoints.addAll(ModelRegistry.GOOGLE_DISCORD_TEXT_ENDPOINT_URLS.values());
+        endpoints.addAll(ModelRegistry.GOOGLE_DISCORD_MULTIMODAL_ENDPOINT_URLS.values());
+        return endpoints;
+    }
+
+    @Override
+    protected String getApiKeyEnv() {
+        return "GEMINI_API_KEY";
+    }
+
+    @Override
+    public boolean usesPreviousResponseId() {
+        return true;
+    }
+
+    @Override
+    public MetadataContainer createContainer(Map<String, Object> response) {
+        return new OpenAIContainer(response);
+    }
+}
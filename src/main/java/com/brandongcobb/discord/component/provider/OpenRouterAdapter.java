@@ -0,0 +1,65 @@
+/*  OpenRouterAdapter.java The purpose of this class is to adapt OpenRouter requests
+ *  to the shared provider pipeline.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.provider;
+
+import com.brandongcobb.discord.component.transport.ProviderTransport;
+import com.brandongcobb.discord.objects.OpenRouterContainer;
+import com.brandongcobb.discord.registry.ModelRegistry;
+import com.brandongcobb.metadata.MetadataContainer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+@Component
+public class OpenRouterAdapter extends AbstractProviderAdapter {
+
+    @Autowired
+    public OpenRouterAdapter(ProviderTransport transport) {
+        super(transport);
+    }
+
+    @Override
+    public String getName() {
+        return "openrouter";
+    }
+
+    @Override
+    public Collection<String> getEndpoints() {
+        Set<String> endpoints = new LinkedHashSet<>();
+        endpoints.addAll(ModelRegistry.OPENROUTER_ENDPOINT_URLS.values());
+        endpoints.addAll(ModelRegistry.OPENROUTER_CLI_ENDPOINT_URLS.values());
+        endpoints.addAll(ModelRegistry.OPENROUTER_DISCORD_TEXT_ENDPOINT_URLS.values());
+        endpoints.addAll(ModelRegistry.OPENROUTER_DISCORD_MULTIMODAL_ENDPOINT_URLS.values());
+        return endpoints;
+    }
+
+    @Override
+    protected String getApiKeyEnv() {
+        return "OPENROUTER_API_KEY";
+    }
+
+    @Override
+    public MetadataContainer createContainer(Map<String, Object> response) {
+        return new OpenRouterContainer(response);
+    }
+}
@@ -0,0 +1,55 @@
+/*  ProviderAdapter.java The purpose of this interface is to describe how one AI
+ *  provider is authorized, called and decoded.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.provider;
+
+import com.brandongcobb.discord.records.Delta;
+import com.brandongcobb.metadata.MetadataContainer;
+import org.apache.http.client.methods.HttpPost;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+public interface ProviderAdapter {
+    String getName();
+    Collection<String> getEndpoints();
+    void authorize(HttpPost post);
+    MetadataContainer createContainer(Map<String, Object> response);
+    MetadataContainer toContainer(Map<String, Object> response);
+    CompletableFuture<Map<String, Object>> completeFetchResponse(Map<String, Object> requestBody, String endpoint, Consumer<Delta> onDelta);
+    default CompletableFuture<MetadataContainer> completeProcessRequest(Map<String, Object> requestBody, String endpoint, Consumer<Delta> onDelta) {
+        return completeFetchResponse(requestBody, endpoint, onDelta).thenApply(this::toContainer);
+    }
+    default boolean usesPreviousResponseId() {
+        return false;
+    }
+    /*
+     *  Providers without function calling get the tool list as a JSON-schema response_format instead.
+     */
+    default boolean supportsNativeTools() {
+        return true;
+    }
+    /*
+     *  Providers serving the OpenAI files and batches API next to their chat endpoint.
+     */
+    default boolean supportsBatch() {
+        return false;
+    }
+}
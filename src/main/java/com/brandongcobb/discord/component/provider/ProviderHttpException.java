@@ -0,0 +1,65 @@
+/*  ProviderHttpException.java The purpose of this class is to carry the
+ *  HTTP status and Retry-After hint of a failed provider call.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.provider;
+
+import java.io.IOException;
+
+public class ProviderHttpException extends IOException {
+
+    private final String provider;
+    private final int statusCode;
+    private final long retryAfterMillis;
+
+    public ProviderHttpException(String provider, int statusCode, long retryAfterMillis, String body) {
+        super(provider + " HTTP " + statusCode + ": " + body);
+        this.provider = provider;
+        this.statusCode = statusCode;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /*
+     *  Getters
+     */
+    public String getProvider() {
+        return provider;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public boolean isRetryable() {
+        return statusCode == 429 || statusCode >= 500;
+    }
+
+    /*
+     *  Finds the provider failure underneath CompletionException wrappers, if there is one.
+     */
+    public static ProviderHttpException find(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ProviderHttpException providerError) return providerError;
+            if (cause.getCause() == cause) break;
+        }
+        return null;
+    }
+}
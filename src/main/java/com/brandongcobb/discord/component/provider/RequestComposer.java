@@ -0,0 +1,184 @@
+/*  RequestComposer.java The purpose of this class is to lay out provider
+ *  request bodies so the prompt prefix stays byte-identical across turns.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.provider;
+
+import com.brandongcobb.discord.Application;
+import com.brandongcobb.discord.enums.StructuredOutput;
+import com.brandongcobb.discord.records.ModelInfo;
+import com.brandongcobb.discord.registry.ModelRegistry;
+import com.brandongcobb.discord.service.ToolService;
+import com.brandongcobb.discord.tools.CustomTool;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.RawValue;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/*
+ *  Providers cache the longest previously seen prompt prefix, so every body is written
+ *  stable-first: model, instructions, tools, history oldest to newest, then the new turn.
+ *  Per-turn values (token budgets, stream, previous_response_id) go after the messages.
+ *  Nothing time-dependent is ever added.
+ *  Providers without function calling get the same tools as a JSON-schema response_format
+ *  (StructuredOutput.TOOL_CALLS with the tool names as an enum), rebuilt only when the tool set changes.
+ *  "summary" is a chat completion with neither: background jobs get plain text back and pay no schema tokens.
+ */
+@Component
+public class RequestComposer {
+
+    private static final Logger LOGGER = Logger.getLogger(Application.class.getName());
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ToolService toolService;
+    private volatile long toolCallFormatVersion = -1L;
+    private volatile RawValue toolCallFormat;
+
+    @Autowired
+    public RequestComposer(ToolService toolService) {
+        this.toolService = toolService;
+    }
+
+    public Map<String, Object> compose(ProviderAdapter adapter, String requestType, String model, String instructions, List<Message> history, String content, String previousResponseId, boolean stream, long maxTokens) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        RawValue tools = toolService.getCompiledTools();
+        switch (requestType) {
+            case "deprecated", "summary" -> {
+                body.put("model", model);
+                // Only OpenAI gets a system role; other providers see the instructions as the opening user turn.
+                boolean openai = "openai".equals(adapter.getName());
+                boolean withTools = !"summary".equals(requestType);
+                if (withTools && adapter.supportsNativeTools()) {
+                    body.put("tools", tools);
+                } else if (withTools) {
+                    body.put("response_format", getToolCallFormat());
+                }
+                List<Map<String, Object>> messages = new ArrayList<>();
+                messages.add(message(openai ? "system" : "user", instructions));
+                appendTurns(messages, history, content);
+                body.put("messages", messages);
+                body.put("max_completion_tokens", maxTokens);
+                if (stream) {
+                    body.put("stream", true);
+                    body.put("stream_options", Map.of("include_usage", true));
+                }
+                putTemperature(body);
+            }
+            case "moderation" -> {
+                body.put("model", model);
+                body.put("arguments", content);
+            }
+            case "response" -> {
+                body.put("model", model);
+                body.put("instructions", instructions);
+                body.put("tools", tools);
+                List<Map<String, Object>> messages = new ArrayList<>();
+                messages.add(message("system", instructions));
+                appendTurns(messages, history, content);
+                body.put("arguments", messages);
+                ModelInfo info = ModelRegistry.RESPONSE_MODEL_CONTEXT_LIMITS.get(model);
+                body.put(info != null && info.status() ? "max_output_tokens" : "max_tokens", maxTokens);
+                body.put("stream", stream);
+                if (previousResponseId != null) body.put("previous_response_id", previousResponseId);
+                putTemperature(body);
+            }
+            default -> body.put("placeholder", "");
+        }
+        return body;
+    }
+
+    /*
+     *  Helpers
+     */
+    private RawValue getToolCallFormat() {
+        long version = toolService.getToolsVersion();
+        if (toolCallFormat != null && toolCallFormatVersion == version) return toolCallFormat;
+        try {
+            ObjectNode schema = (ObjectNode) mapper.readTree(StructuredOutput.TOOL_CALLS.asString());
+            ArrayNode names = ((ObjectNode) schema.at("/properties/tool_calls/items/properties/tool")).putArray("enum");
+            for (CustomTool<?, ?> tool : toolService.getTools()) {
+                names.add(tool.getName());
+            }
+            ObjectNode format = mapper.createObjectNode();
+            format.put("type", "json_schema");
+            ObjectNode jsonSchema = format.putObject("json_schema");
+            jsonSchema.put("name", "tool_calls");
+            jsonSchema.set("schema", schema);
+            toolCallFormat = new RawValue(new SerializedString(mapper.writeValueAsString(format)));
+            toolCallFormatVersion = version;
+            return toolCallFormat;
+        } catch (Exception e) {
+            throw new IllegalStateException("getToolCallFormat failed: " + e.getMessage(), e);
+        }
+    }
+
+    private void appendTurns(List<Map<String, Object>> messages, List<Message> history, String content) {
+        if (history != null) {
+            for (Message turn : history) {
+                messages.add(render(turn));
+            }
+        }
+        if (content != null && !content.isEmpty()) messages.add(message("user", content));
+    }
+
+    /*
+     *  Tool results carry no matching assistant tool_calls in memory, so they are replayed as user turns.
+     */
+    private static Map<String, Object> render(Message turn) {
+        if (turn instanceof ToolResponseMessage toolMsg) {
+            StringBuilder text = new StringBuilder();
+            for (ToolResponseMessage.ToolResponse response : toolMsg.getResponses()) {
+                if (!text.isEmpty()) text.append('\n');
+                text.append(response.responseData());
+            }
+            return message("user", toolMsg.getMessageType() + ": " + text);
+        }
+        String role = switch (turn.getMessageType()) {
+            case ASSISTANT -> "assistant";
+            case SYSTEM -> "system";
+            default -> "user";
+        };
+        return message(role, turn.getText() != null ? turn.getText() : "");
+    }
+
+    private static Map<String, Object> message(String role, String content) {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("role", role);
+        message.put("content", content);
+        return message;
+    }
+
+    private static void putTemperature(Map<String, Object> body) {
+        String temperature = System.getenv("DISCORD_TEMPERATURE");
+        if (temperature == null || temperature.isBlank()) return;
+        try {
+            body.put("temperature", Double.parseDouble(temperature.trim()));
+        } catch (NumberFormatException e) {
+            LOGGER.warning("Ignoring non-numeric DISCORD_TEMPERATURE=" + temperature);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*  ToolCallExtractor.java The purpose of this class is to lift tool calls
+ *  out of any provider response into typed ToolCall records.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.provider;
+
+import com.brandongcobb.discord.Application;
+import com.brandongcobb.discord.records.ToolCall;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/*
+ *  Three shapes are understood, all without scanning free text:
+ *      chat completions  choices[0].message.tool_calls (native function calling, streamed or not)
+ *      Responses API     output items of type function_call
+ *      structured output message content matching StructuredOutput.TOOL_CALLS, or a bare {"tool", "arguments"} object
+ *  Structured output replaces the JSON envelope with its inner "content" so the reply reads as plain text.
+ *  Every call in a turn is kept, in order; ids are null where the shape has none.
+ */
+public final class ToolCallExtractor {
+
+    private static final Logger LOGGER = Logger.getLogger(Application.class.getName());
+    private static final String FENCE = "```";
+
+    private ToolCallExtractor() {}
+
+    public record Extraction(List<ToolCall> toolCalls, String content) {}
+
+    public static Extraction extract(Map<String, Object> response, ObjectMapper mapper) {
+        List<ToolCall> calls = new ArrayList<>();
+        String content = null;
+        if (response.get("choices") instanceof List<?> choices && !choices.isEmpty()
+                && choices.get(0) instanceof Map<?, ?> choice && choice.get("message") instanceof Map<?, ?> message) {
+            if (message.get("tool_calls") instanceof List<?> toolCalls) {
+                for (Object toolCall : toolCalls) {
+                    if (toolCall instanceof Map<?, ?> call && call.get("function") instanceof Map<?, ?> function) {
+                        add(calls, mapper, call.get("id"), function.get("name"), function.get("arguments"));
+                    }
+                }
+            }
+            if (calls.isEmpty() && message.get("content") instanceof String text) {
+                content = unwrapStructured(calls, mapper, text);
+            }
+        } else if (response.get("output") instanceof List<?> output) {
+            for (Object item : output) {
+                if (item instanceof Map<?, ?> map && "function_call".equals(map.get("type"))) {
+                    add(calls, mapper, map.get("call_id"), map.get("name"), map.get("arguments"));
+                }
+            }
+        }
+        return new Extraction(calls, content);
+    }
+
+    /*
+     *  Returns the inner content when text is a structured envelope, otherwise null.
+     */
+    private static String unwrapStructured(List<ToolCall> calls, ObjectMapper mapper, String text) {
+        String body = text.strip();
+        if (body.startsWith(FENCE) && body.endsWith(FENCE) && body.length() > 2 * FENCE.length()) {
+            int newline = body.indexOf('\n');
+            body = newline == -1 ? "" : body.substring(newline + 1, body.length() - FENCE.length()).strip();
+        }
+        if (!body.startsWith("{") || !body.endsWith("}")) return null;
+        JsonNode root;
+        try {
+            root = mapper.readTree(body);
+        } catch (Exception e) {
+            return null;
+        }
+        if (root.has("tool") && root.has("arguments")) {
+            add(calls, mapper, null, root.get("tool").asText(), root.get("arguments"));
+            return "";
+        }
+        if (!root.has("tool_calls") && !root.has("content")) return null;
+        for (JsonNode call : root.path("tool_calls")) {
+            add(calls, mapper, null, call.path("tool").asText(null), call.get("arguments"));
+        }
+        return root.path("content").asText("");
+    }
+
+    private static void add(List<ToolCall> calls, ObjectMapper mapper, Object id, Object name, Object arguments) {
+        if (!(name instanceof String toolName) || toolName.isBlank()) return;
+        try {
+            JsonNode args = arguments instanceof String json
+                ? (json.isBlank() ? mapper.createObjectNode() : mapper.readTree(json))
+                : arguments instanceof JsonNode node ? node : mapper.valueToTree(arguments);
+            calls.add(new ToolCall(id instanceof String callId ? callId : null, toolName, args == null || args.isNull() ? mapper.createObjectNode() : args));
+        } catch (Exception e) {
+            LOGGER.warning("Dropping tool call " + toolName + " with malformed arguments: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*  AgentLoop.java The purpose of this class is to track one user turn's
+ *  agent loop against its step, token and time budgets.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.session;
+
+import com.brandongcobb.discord.enums.LoopStop;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ *  Budgets are checked between iterations; an iteration already talking to the provider is allowed to finish.
+ *  Cancelling is the exception: it aborts the provider request the current step registered with setStep.
+ *  The first stop reason wins and completes getDone().
+ */
+public class AgentLoop {
+
+    private final int maxSteps;
+    private final long maxTokens;
+    private final long startedNanos = System.nanoTime();
+    private final long deadlineNanos;
+    private final AtomicInteger steps = new AtomicInteger();
+    private final AtomicLong tokens = new AtomicLong();
+    private final CompletableFuture<LoopStop> done = new CompletableFuture<>();
+    private final AtomicReference<CompletableFuture<?>> step = new AtomicReference<>();
+
+    public AgentLoop(int maxSteps, long maxTokens, long deadlineMillis) {
+        this.maxSteps = maxSteps;
+        this.maxTokens = maxTokens;
+        this.deadlineNanos = startedNanos + deadlineMillis * 1_000_000L;
+    }
+
+    /*
+     *  Returns the reason to stop before the next iteration, or null to keep going.
+     */
+    public LoopStop check() {
+        if (done.isDone()) return done.getNow(LoopStop.CANCELLED);
+        if (steps.get() >= maxSteps) return LoopStop.STEP_BUDGET;
+        if (tokens.get() >= maxTokens) return LoopStop.TOKEN_BUDGET;
+        if (System.nanoTime() - deadlineNanos >= 0) return LoopStop.DEADLINE;
+        return null;
+    }
+
+    public boolean finish(LoopStop reason) {
+        return done.complete(reason);
+    }
+
+    /*
+     *  Cancels the registered step future with cancel(true), so its stream subscription or HTTP exchange is torn down.
+     */
+    public void cancelStep() {
+        CompletableFuture<?> current = step.getAndSet(null);
+        if (current != null) current.cancel(true);
+    }
+
+    public void addTokens(long count) {
+        tokens.addAndGet(count);
+    }
+
+    public int nextStep() {
+        return steps.incrementAndGet();
+    }
+
+    /*
+     *  Getters
+     */
+    public CompletableFuture<LoopStop> getDone() {
+        return done;
+    }
+
+    /*
+     *  Time left before the deadline; zero or less once it has passed.
+     */
+    public long getRemainingMillis() {
+        return (deadlineNanos - System.nanoTime()) / 1_000_000L;
+    }
+
+    public long getElapsedNanos() {
+        return System.nanoTime() - startedNanos;
+    }
+
+    public int getSteps() {
+        return steps.get();
+    }
+
+    public long getTokens() {
+        return tokens.get();
+    }
+
+    public boolean isFinished() {
+        return done.isDone();
+    }
+
+    /*
+     *  Setters
+     */
+    public void setStep(CompletableFuture<?> future) {
+        step.set(future);
+        future.whenComplete((result, error) -> step.compareAndSet(future, null));
+        // A cancel that landed before the step registered still has to reach it.
+        if (done.isDone() && done.getNow(null) == LoopStop.CANCELLED) cancelStep();
+    }
+}
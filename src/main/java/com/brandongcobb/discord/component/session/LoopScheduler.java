@@ -0,0 +1,122 @@
+/*  LoopScheduler.java The purpose of this class is to drive a session's
+ *  agent loop one iteration at a time until the model is done or a budget
+ *  runs out.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.session;
+
+import com.brandongcobb.discord.Application;
+import com.brandongcobb.discord.enums.LoopStop;
+import com.brandongcobb.discord.registry.MetricsRegistry;
+import com.brandongcobb.discord.utils.inc.Helpers;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/*
+ *  An iteration is one R-E-P pass and answers whether the model asked for tools; a pass without tool calls is the
+ *  model's final answer and ends the loop. Every iteration is a separate mailbox message, so the future chain stays
+ *  flat and other work for the session can interleave. Budgets:
+ *      DISCORD_LOOP_MAX_STEPS (8), DISCORD_LOOP_MAX_TOKENS (200000), DISCORD_LOOP_DEADLINE_MS (300000).
+ */
+@Component
+public class LoopScheduler {
+
+    private static final Logger LOGGER = Logger.getLogger(Application.class.getName());
+    private final int maxSteps = Helpers.getEnvInt("DISCORD_LOOP_MAX_STEPS", 8);
+    private final long maxTokens = Helpers.getEnvInt("DISCORD_LOOP_MAX_TOKENS", 200_000);
+    private final long deadlineMillis = Helpers.getEnvInt("DISCORD_LOOP_DEADLINE_MS", 300_000);
+
+    /*
+     *  Starts a loop for a new user turn, superseding any loop the session is still running.
+     *  The first task runs before the first iteration, inside the same mailbox message.
+     */
+    public CompletableFuture<LoopStop> start(Session session, Function<AgentLoop, CompletableFuture<Void>> first, Function<AgentLoop, CompletableFuture<Boolean>> iteration) {
+        AgentLoop loop = new AgentLoop(maxSteps, maxTokens, deadlineMillis);
+        AgentLoop previous = session.replaceLoop(loop);
+        if (previous != null && previous.finish(LoopStop.SUPERSEDED)) record(session, previous, LoopStop.SUPERSEDED);
+        MetricsRegistry.increment("loop.started");
+        session.submit(() -> first.apply(loop).thenCompose(v -> completeIteration(session, loop, iteration)))
+            .exceptionally(ex -> {
+                // A cancelled step fails too; the loop is already stopped then and there is nothing to report.
+                if (stop(session, loop, failure(loop))) {
+                    LOGGER.severe("Agent loop for " + session.getConversationId() + " failed: " + ex.getMessage());
+                }
+                return null;
+            });
+        return loop.getDone();
+    }
+
+    /*
+     *  Stops the session's loop and aborts the provider request of the step in flight.
+     */
+    public boolean cancel(Session session) {
+        AgentLoop loop = session.getLoop();
+        if (loop == null || !stop(session, loop, LoopStop.CANCELLED)) return false;
+        loop.cancelStep();
+        return true;
+    }
+
+    private CompletableFuture<Void> completeIteration(Session session, AgentLoop loop, Function<AgentLoop, CompletableFuture<Boolean>> iteration) {
+        LoopStop reason = loop.check();
+        if (reason != null) {
+            stop(session, loop, reason);
+            return CompletableFuture.completedFuture(null);
+        }
+        int step = loop.nextStep();
+        long started = System.nanoTime();
+        MetricsRegistry.increment("loop.iterations");
+        return iteration.apply(loop).thenAccept(more -> {
+            MetricsRegistry.record("loop.iteration", System.nanoTime() - started);
+            LOGGER.fine("Loop step " + step + " for " + session.getConversationId() + " took " + (System.nanoTime() - started) / 1_000_000 + "ms, " + loop.getTokens() + " tokens so far");
+            if (!Boolean.TRUE.equals(more)) {
+                stop(session, loop, LoopStop.DONE);
+            } else {
+                session.submit(() -> completeIteration(session, loop, iteration))
+                    .exceptionally(ex -> {
+                        if (stop(session, loop, failure(loop))) {
+                            LOGGER.severe("Agent loop for " + session.getConversationId() + " failed: " + ex.getMessage());
+                        }
+                        return null;
+                    });
+            }
+        });
+    }
+
+    /*
+     *  A step that failed because it ran into the deadline stops the loop as DEADLINE rather than FAILED.
+     */
+    private static LoopStop failure(AgentLoop loop) {
+        return loop.check() == LoopStop.DEADLINE ? LoopStop.DEADLINE : LoopStop.FAILED;
+    }
+
+    private boolean stop(Session session, AgentLoop loop, LoopStop reason) {
+        if (!loop.finish(reason)) return false;
+        record(session, loop, reason);
+        return true;
+    }
+
+    private void record(Session session, AgentLoop loop, LoopStop reason) {
+        MetricsRegistry.increment("loop.stop." + reason.metricName);
+        MetricsRegistry.increment("loop.steps", loop.getSteps());
+        MetricsRegistry.increment("loop.tokens", loop.getTokens());
+        MetricsRegistry.record("loop.turn", loop.getElapsedNanos());
+        LOGGER.fine("Loop for " + session.getConversationId() + " stopped (" + reason.metricName + ") after " + loop.getSteps() + " steps");
+    }
+}
@@ -0,0 +1,202 @@
+/*  Session.java The purpose of this class is to hold one conversation's
+ *  state and run its work one message at a time.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.session;
+
+import com.brandongcobb.discord.records.SessionKey;
+import com.brandongcobb.discord.records.ToolCall;
+import com.brandongcobb.discord.records.ToolOutcome;
+import com.brandongcobb.metadata.MetadataContainer;
+import net.dv8tion.jda.api.entities.channel.middleman.GuildChannel;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/*
+ *  An actor: submitted tasks run one after another on the shared executor, and the next task starts only once
+ *  the previous task's future completes, so the state below is never touched by two steps at once.
+ *  No thread is held between tasks. A task must never wait on work queued behind it in the same mailbox.
+ */
+public class Session {
+
+    private final SessionKey key;
+    private final Executor executor;
+    private final Queue<Supplier<CompletableFuture<?>>> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicReference<AgentLoop> loop = new AtomicReference<>();
+    private final Map<String, CompletableFuture<ToolOutcome>> speculative = new ConcurrentHashMap<>();
+    private volatile long lastActive = System.currentTimeMillis();
+    private volatile GuildChannel channel;
+    private volatile boolean firstRun = true;
+    private volatile MetadataContainer lastResponse;
+    private volatile List<ToolCall> pendingToolCalls;
+    private volatile String originalDirective;
+    private volatile boolean replyStreamed = false;
+    private volatile boolean speculationBlocked = false;
+
+    public Session(SessionKey key, Executor executor) {
+        this.key = key;
+        this.executor = executor;
+    }
+
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        mailbox.add(() -> {
+            CompletableFuture<T> future;
+            try {
+                future = task.get();
+            } catch (Throwable t) {
+                future = CompletableFuture.failedFuture(t);
+            }
+            if (future == null) future = CompletableFuture.completedFuture(null);
+            future.whenComplete((value, error) -> {
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(value);
+                }
+            });
+            return future;
+        });
+        touch();
+        schedule();
+        return result;
+    }
+
+    /*
+     *  A new user turn supersedes the loop still running for the previous one; returns that loop.
+     */
+    public AgentLoop replaceLoop(AgentLoop next) {
+        return loop.getAndSet(next);
+    }
+
+    public boolean isIdle(long now, long idleMillis) {
+        return !running.get() && mailbox.isEmpty() && now - lastActive >= idleMillis;
+    }
+
+    /*
+     *  Getters
+     */
+    public GuildChannel getChannel() {
+        return channel;
+    }
+
+    public String getConversationId() {
+        return key.conversationId();
+    }
+
+    public AgentLoop getLoop() {
+        return loop.get();
+    }
+
+    public SessionKey getKey() {
+        return key;
+    }
+
+    public MetadataContainer getLastResponse() {
+        return lastResponse;
+    }
+
+    public String getOriginalDirective() {
+        return originalDirective;
+    }
+
+    public List<ToolCall> getPendingToolCalls() {
+        return pendingToolCalls;
+    }
+
+    public Map<String, CompletableFuture<ToolOutcome>> getSpeculative() {
+        return speculative;
+    }
+
+    public boolean isFirstRun() {
+        return firstRun;
+    }
+
+    public boolean isReplyStreamed() {
+        return replyStreamed;
+    }
+
+    public boolean isSpeculationBlocked() {
+        return speculationBlocked;
+    }
+
+    /*
+     *  Setters
+     */
+    public void setChannel(GuildChannel channel) {
+        this.channel = channel;
+    }
+
+    public void setFirstRun(boolean firstRun) {
+        this.firstRun = firstRun;
+    }
+
+    public void setLastResponse(MetadataContainer lastResponse) {
+        this.lastResponse = lastResponse;
+    }
+
+    public void setOriginalDirective(String originalDirective) {
+        this.originalDirective = originalDirective;
+    }
+
+    public void setPendingToolCalls(List<ToolCall> pendingToolCalls) {
+        this.pendingToolCalls = pendingToolCalls;
+    }
+
+    public void setReplyStreamed(boolean replyStreamed) {
+        this.replyStreamed = replyStreamed;
+    }
+
+    public void setSpeculationBlocked(boolean speculationBlocked) {
+        this.speculationBlocked = speculationBlocked;
+    }
+
+    /*
+     *  Helpers
+     */
+    void touch() {
+        lastActive = System.currentTimeMillis();
+    }
+
+    private void schedule() {
+        if (running.compareAndSet(false, true)) executor.execute(this::runNext);
+    }
+
+    private void runNext() {
+        Supplier<CompletableFuture<?>> next = mailbox.poll();
+        if (next == null) {
+            running.set(false);
+            // A submit that raced with the empty poll must not be stranded.
+            if (!mailbox.isEmpty()) schedule();
+            return;
+        }
+        next.get().whenComplete((value, error) -> {
+            touch();
+            executor.execute(this::runNext);
+        });
+    }
+}
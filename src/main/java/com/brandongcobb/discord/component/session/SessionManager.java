@@ -0,0 +1,118 @@
+/*  SessionManager.java The purpose of this class is to hand out one session
+ *  per guild, channel and user and to evict the ones that go idle.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.session;
+
+import com.brandongcobb.discord.Application;
+import com.brandongcobb.discord.component.executor.IoExecutor;
+import com.brandongcobb.discord.records.SessionKey;
+import com.brandongcobb.discord.registry.MetricsRegistry;
+import com.brandongcobb.discord.utils.inc.Helpers;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/*
+ *  Sessions idle for DISCORD_SESSION_IDLE_MS (30 minutes) with an empty mailbox are dropped; eviction listeners
+ *  release whatever else was keyed by the conversation. A session that is busy or has queued work is never evicted.
+ */
+@Component
+public class SessionManager {
+
+    private static final Logger LOGGER = Logger.getLogger(Application.class.getName());
+    private final IoExecutor ioExecutor;
+    private final long idleMillis = Helpers.getEnvInt("DISCORD_SESSION_IDLE_MS", 1_800_000);
+    private final Map<SessionKey, Session> sessions = new ConcurrentHashMap<>();
+    private final List<Consumer<Session>> evictionListeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("discord-session-reaper").daemon(true).factory());
+
+    @Autowired
+    public SessionManager(IoExecutor ioExecutor) {
+        this.ioExecutor = ioExecutor;
+        long period = Math.max(1_000L, idleMillis / 4);
+        reaper.scheduleAtFixedRate(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+        MetricsRegistry.gauge("sessions.active", sessions::size);
+    }
+
+    /*
+     *  A lookup counts as activity. The touch happens inside the map's per-key lock, which eviction also takes,
+     *  so a session handed out here cannot be evicted before the caller enqueues its work.
+     */
+    public Session getSession(SessionKey key) {
+        return sessions.compute(key, (k, existing) -> {
+            Session session = existing;
+            if (session == null) {
+                MetricsRegistry.increment("sessions.created");
+                session = new Session(k, ioExecutor);
+            }
+            session.touch();
+            return session;
+        });
+    }
+
+    /*
+     *  Looks a session up without creating one; null when none exists.
+     */
+    public Session findSession(SessionKey key) {
+        return sessions.get(key);
+    }
+
+    public void onEvict(Consumer<Session> listener) {
+        evictionListeners.add(listener);
+    }
+
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        sessions.forEach((key, session) -> {
+            if (!session.isIdle(now, idleMillis)) return;
+            // Checked again under the key's lock: a getSession in between has touched it.
+            boolean[] evicted = {false};
+            sessions.computeIfPresent(key, (k, current) -> {
+                if (current != session || !current.isIdle(now, idleMillis)) return current;
+                evicted[0] = true;
+                return null;
+            });
+            if (!evicted[0]) return;
+            MetricsRegistry.increment("sessions.evicted");
+            LOGGER.finer("Evicted idle session " + key.conversationId());
+            for (Consumer<Session> listener : evictionListeners) {
+                try {
+                    listener.accept(session);
+                } catch (Exception e) {
+                    LOGGER.warning("Session eviction listener failed: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        reaper.shutdownNow();
+    }
+}
@@ -0,0 +1,87 @@
+/*  FenceAccumulator.java The purpose of this class is to collect streamed
+ *  text and cut it into Discord-sized pages without breaking code fences.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.stream;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ *  A page that ends inside a fence is closed with ``` and the next page reopens it with the
+ *  same info string. A fence still open at the tail of the stream is closed for display only.
+ *  append is cheap; pages walks the whole text and is meant to be called at edit rate.
+ */
+public class FenceAccumulator {
+
+    private static final String FENCE = "```";
+    private final int pageSize;
+    private final StringBuilder text = new StringBuilder();
+
+    public FenceAccumulator(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public synchronized void append(String delta) {
+        if (delta != null) text.append(delta);
+    }
+
+    public synchronized int length() {
+        return text.length();
+    }
+
+    public synchronized List<String> pages() {
+        List<String> pages = new ArrayList<>();
+        StringBuilder page = new StringBuilder();
+        String openFence = null;
+        int start = 0;
+        while (start < text.length()) {
+            int newline = text.indexOf("\n", start);
+            int end = newline == -1 ? text.length() : newline + 1;
+            String line = text.substring(start, end);
+            start = end;
+            int reserve = openFence != null ? FENCE.length() + 1 : 0;
+            if (page.length() + line.length() + reserve > pageSize && page.length() > 0) {
+                pages.add(close(page, openFence));
+                page.setLength(0);
+                if (openFence != null) page.append(openFence).append('\n');
+            }
+            // A single line longer than a page is hard-split.
+            while (page.length() + line.length() + reserve > pageSize) {
+                int room = Math.max(1, pageSize - page.length() - reserve);
+                page.append(line, 0, room);
+                line = line.substring(room);
+                pages.add(close(page, openFence));
+                page.setLength(0);
+                if (openFence != null) page.append(openFence).append('\n');
+            }
+            page.append(line);
+            String trimmed = line.strip();
+            if (trimmed.startsWith(FENCE)) {
+                openFence = openFence == null ? trimmed : null;
+            }
+        }
+        if (page.length() > 0) pages.add(close(page, openFence));
+        return pages;
+    }
+
+    private static String close(StringBuilder page, String openFence) {
+        if (openFence == null) return page.toString();
+        boolean newline = page.length() > 0 && page.charAt(page.length() - 1) == '\n';
+        return page + (newline ? "" : "\n") + FENCE;
+    }
+}
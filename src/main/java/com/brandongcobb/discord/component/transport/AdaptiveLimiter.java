@@ -0,0 +1,179 @@
+/*  AdaptiveLimiter.java The purpose of this class is to bound and adapt the
+ *  number of requests in flight to one provider endpoint.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.transport;
+
+import com.brandongcobb.discord.Application;
+import com.brandongcobb.discord.registry.MetricsRegistry;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+/*
+ *  AIMD: every success grows the limit by 1/limit, every 429/503 halves it.
+ *  Callers over the limit wait in a bounded queue for at most maxWaitMillis.
+ */
+public class AdaptiveLimiter {
+
+    private static final Logger LOGGER = Logger.getLogger(Application.class.getName());
+    private final String name;
+    private final double minLimit;
+    private final double maxLimit;
+    private final int maxQueue;
+    private final long maxWaitMillis;
+    private final Deque<CompletableFuture<Permit>> queue = new ArrayDeque<>();
+    private double limit;
+    private int inFlight = 0;
+    private long blockedUntil = 0L;
+    private boolean drainScheduled = false;
+
+    public enum Outcome { SUCCESS, DROPPED, IGNORED }
+
+    public AdaptiveLimiter(String name, int initialLimit, int minLimit, int maxLimit, int maxQueue, long maxWaitMillis) {
+        this.name = name;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.maxQueue = maxQueue;
+        this.maxWaitMillis = maxWaitMillis;
+        MetricsRegistry.gauge("limiter." + name + ".limit", this::getLimit);
+        MetricsRegistry.gauge("limiter." + name + ".inflight", this::getInFlight);
+        MetricsRegistry.gauge("limiter." + name + ".queued", this::getQueued);
+    }
+
+    public CompletableFuture<Permit> acquire() {
+        CompletableFuture<Permit> waiter;
+        synchronized (this) {
+            if (queue.isEmpty() && canGrant()) {
+                inFlight++;
+                return CompletableFuture.completedFuture(new Permit());
+            }
+            if (queue.size() >= maxQueue) {
+                MetricsRegistry.increment("limiter." + name + ".rejected");
+                return CompletableFuture.failedFuture(new RejectedExecutionException("acquire failed: " + name + " queue is full (" + maxQueue + ")"));
+            }
+            waiter = new CompletableFuture<>();
+            queue.addLast(waiter);
+            scheduleDrain();
+        }
+        long queuedAt = System.nanoTime();
+        waiter.orTimeout(maxWaitMillis, TimeUnit.MILLISECONDS).whenComplete((permit, error) -> {
+            if (error != null) {
+                synchronized (this) {
+                    queue.remove(waiter);
+                }
+                if (error instanceof TimeoutException) MetricsRegistry.increment("limiter." + name + ".timeout");
+            } else {
+                MetricsRegistry.record("limiter." + name + ".wait", System.nanoTime() - queuedAt);
+            }
+        });
+        return waiter;
+    }
+
+    /*
+     *  Pauses every grant until the provider's Retry-After or rate-limit reset has passed.
+     */
+    public void blockFor(long millis) {
+        if (millis <= 0) return;
+        synchronized (this) {
+            blockedUntil = Math.max(blockedUntil, System.currentTimeMillis() + millis);
+            scheduleDrain();
+        }
+        LOGGER.fine("Limiter " + name + " paused for " + millis + "ms");
+    }
+
+    /*
+     *  Getters
+     */
+    public synchronized double getLimit() {
+        return limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued() {
+        return queue.size();
+    }
+
+    /*
+     *  Helpers
+     */
+    private boolean canGrant() {
+        return inFlight < (int) limit && System.currentTimeMillis() >= blockedUntil;
+    }
+
+    private void release(Outcome outcome) {
+        synchronized (this) {
+            inFlight--;
+            switch (outcome) {
+                case SUCCESS -> limit = Math.min(maxLimit, limit + 1.0 / limit);
+                case DROPPED -> limit = Math.max(minLimit, limit / 2.0);
+                case IGNORED -> { }
+            }
+        }
+        drain();
+    }
+
+    private void drain() {
+        while (true) {
+            CompletableFuture<Permit> next;
+            synchronized (this) {
+                drainScheduled = false;
+                if (queue.isEmpty()) return;
+                if (!canGrant()) {
+                    scheduleDrain();
+                    return;
+                }
+                next = queue.pollFirst();
+                if (next.isDone()) continue;
+                inFlight++;
+            }
+            if (!next.complete(new Permit())) {
+                release(Outcome.IGNORED);
+                return;
+            }
+        }
+    }
+
+    private void scheduleDrain() {
+        long wait = blockedUntil - System.currentTimeMillis();
+        if (drainScheduled || wait <= 0) return;
+        drainScheduled = true;
+        CompletableFuture.delayedExecutor(wait, TimeUnit.MILLISECONDS).execute(this::drain);
+    }
+
+    public final class Permit {
+
+        private boolean released = false;
+
+        public void release(Outcome outcome) {
+            synchronized (this) {
+                if (released) return;
+                released = true;
+            }
+            AdaptiveLimiter.this.release(outcome);
+        }
+    }
+}
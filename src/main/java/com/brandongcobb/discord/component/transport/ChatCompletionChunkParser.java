@@ -0,0 +1,278 @@
+/*  ChatCompletionChunkParser.java The purpose of this class is to pull the
+ *  useful fields out of streamed chat-completion chunks without building
+ *  a Map tree for every frame.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.transport;
+
+import com.brandongcobb.discord.records.ToolCall;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ *  One instance per stream. Only choice 0 is tracked; content, tool call
+ *  fragments, finish_reason and usage accumulate across chunks. Tool calls
+ *  whose arguments closed during a parse are handed out by drainToolCalls.
+ */
+public class ChatCompletionChunkParser {
+
+    private final ObjectMapper mapper;
+    private final StringBuilder content = new StringBuilder();
+    private final ToolCallAssembler toolCalls;
+    private final List<ToolCall> completed = new ArrayList<>();
+    private String id;
+    private String model;
+    private Number created;
+    private String finishReason;
+    private Map<String, Object> usage;
+    private long chunks = 0;
+
+    public ChatCompletionChunkParser(ObjectMapper mapper) {
+        this.mapper = mapper;
+        this.toolCalls = new ToolCallAssembler(mapper);
+    }
+
+    /*
+     *  Parses one frame and returns its content delta, or null when the chunk carried none.
+     */
+    public String parse(byte[] buf, int offset, int length) throws IOException {
+        String delta = null;
+        try (JsonParser parser = mapper.getFactory().createParser(buf, offset, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("ChatCompletionChunkParser failed: chunk is not a JSON object");
+            }
+            chunks++;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "id" -> id = text(parser, value, id);
+                    case "model" -> model = text(parser, value, model);
+                    case "created" -> created = value.isNumeric() ? parser.getNumberValue() : created;
+                    case "choices" -> {
+                        if (value == JsonToken.START_ARRAY) {
+                            delta = parseChoices(parser);
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                    case "usage" -> {
+                        if (value == JsonToken.START_OBJECT) {
+                            usage = mapper.readValue(parser, new TypeReference<Map<String, Object>>() {});
+                        }
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        if (delta != null) content.append(delta);
+        return delta;
+    }
+
+    /*
+     *  Getters
+     */
+    public long getChunks() {
+        return chunks;
+    }
+
+    public String getContent() {
+        return content.toString();
+    }
+
+    public String getFinishReason() {
+        return finishReason;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public List<Map<String, Object>> getToolCalls() {
+        return toolCalls.getToolCalls();
+    }
+
+    /*
+     *  Returns the calls completed since the last drain, in completion order.
+     */
+    public List<ToolCall> drainToolCalls() {
+        if (completed.isEmpty()) return List.of();
+        List<ToolCall> drained = new ArrayList<>(completed);
+        completed.clear();
+        return drained;
+    }
+
+    public Map<String, Object> getUsage() {
+        return usage;
+    }
+
+    /*
+     *  Folds the stream back into the shape of a non-streamed chat completion for the containers.
+     */
+    public Map<String, Object> toResponseMap() {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("role", "assistant");
+        message.put("content", content.toString());
+        List<Map<String, Object>> calls = getToolCalls();
+        if (!calls.isEmpty()) message.put("tool_calls", calls);
+        Map<String, Object> choice = new LinkedHashMap<>();
+        choice.put("index", 0);
+        choice.put("message", message);
+        choice.put("finish_reason", finishReason);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("id", id);
+        response.put("object", "chat.completion");
+        response.put("created", created);
+        response.put("model", model);
+        response.put("choices", List.of(choice));
+        if (usage != null) response.put("usage", usage);
+        return response;
+    }
+
+    /*
+     *  Helpers
+     */
+    private String parseChoices(JsonParser parser) throws IOException {
+        String delta = null;
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            int index = 0;
+            boolean indexed = false;
+            TokenBuffer pending = null;
+            String choiceDelta = null;
+            String choiceFinish = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "index" -> {
+                        index = value.isNumeric() ? parser.getIntValue() : index;
+                        indexed = true;
+                    }
+                    case "finish_reason" -> choiceFinish = text(parser, value, null);
+                    case "delta", "message" -> {
+                        if (value != JsonToken.START_OBJECT) {
+                            parser.skipChildren();
+                        } else if (indexed) {
+                            choiceDelta = parseDelta(parser, index == 0);
+                        } else {
+                            // The choice's index may still follow; hold the delta until the object closes.
+                            pending = new TokenBuffer(parser);
+                            pending.copyCurrentStructure(parser);
+                        }
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+            if (pending != null) {
+                try (JsonParser buffered = pending.asParser(parser.getCodec())) {
+                    buffered.nextToken();
+                    choiceDelta = parseDelta(buffered, index == 0);
+                }
+            }
+            if (index == 0) {
+                if (choiceDelta != null) delta = choiceDelta;
+                if (choiceFinish != null) finishReason = choiceFinish;
+            }
+        }
+        return delta;
+    }
+
+    private String parseDelta(JsonParser parser, boolean tracked) throws IOException {
+        String delta = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (!tracked) {
+                parser.skipChildren();
+                continue;
+            }
+            switch (field) {
+                case "content" -> delta = text(parser, value, null);
+                case "tool_calls" -> {
+                    if (value == JsonToken.START_ARRAY) {
+                        parseToolCalls(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        return delta;
+    }
+
+    private void parseToolCalls(JsonParser parser) throws IOException {
+        int position = 0;
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            int index = position++;
+            String callId = null;
+            String type = null;
+            String name = null;
+            String arguments = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "index" -> index = value.isNumeric() ? parser.getIntValue() : index;
+                    case "id" -> callId = text(parser, value, null);
+                    case "type" -> type = text(parser, value, null);
+                    case "function" -> {
+                        if (value != JsonToken.START_OBJECT) {
+                            parser.skipChildren();
+                            break;
+                        }
+                        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                            String functionField = parser.currentName();
+                            JsonToken functionValue = parser.nextToken();
+                            if ("name".equals(functionField)) {
+                                name = text(parser, functionValue, null);
+                            } else if ("arguments".equals(functionField) && functionValue == JsonToken.VALUE_STRING) {
+                                arguments = parser.getText();
+                            } else if ("arguments".equals(functionField) && functionValue == JsonToken.START_OBJECT) {
+                                arguments = mapper.writeValueAsString(mapper.readTree(parser));
+                            } else {
+                                parser.skipChildren();
+                            }
+                        }
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+            ToolCall call = toolCalls.append(index, callId, type, name, arguments);
+            if (call != null) completed.add(call);
+        }
+    }
+
+    private static String text(JsonParser parser, JsonToken value, String fallback) throws IOException {
+        if (value == JsonToken.VALUE_STRING) return parser.getText();
+        parser.skipChildren();
+        return fallback;
+    }
+}
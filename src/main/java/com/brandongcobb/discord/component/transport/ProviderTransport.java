@@ -0,0 +1,136 @@
+/*  ProviderTransport.java The purpose of this class is to hold one long-lived,
+ *  pooled HTTP client per AI provider.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.transport;
+
+import com.brandongcobb.discord.Application;
+import com.brandongcobb.discord.component.executor.IoExecutor;
+import com.brandongcobb.discord.registry.MetricsRegistry;
+import com.brandongcobb.discord.utils.inc.Helpers;
+import jakarta.annotation.PreDestroy;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+@Component
+public class ProviderTransport {
+
+    private static final Logger LOGGER = Logger.getLogger(Application.class.getName());
+    private static final RequestConfig REQUEST_CONFIG = RequestConfig.custom().setConnectTimeout(3600_000).setConnectionRequestTimeout(3600_000).setSocketTimeout(3600_000).build();
+    private final IoExecutor ioExecutor;
+    private final Map<String, CloseableHttpClient> clients = new ConcurrentHashMap<>();
+    private final Map<String, PoolingHttpClientConnectionManager> managers = new ConcurrentHashMap<>();
+    private final long keepAliveMillis = Helpers.getEnvInt("DISCORD_HTTP_KEEP_ALIVE_SECONDS", 60) * 1000L;
+    private final int maxPerRoute = Helpers.getEnvInt("DISCORD_HTTP_MAX_PER_ROUTE", 8);
+    private final int maxTotal = Helpers.getEnvInt("DISCORD_HTTP_MAX_TOTAL", 32);
+    private final Map<String, AdaptiveLimiter> limiters = new ConcurrentHashMap<>();
+    private final int limitInitial = Helpers.getEnvInt("DISCORD_LIMIT_INITIAL", 4);
+    private final int limitMin = Helpers.getEnvInt("DISCORD_LIMIT_MIN", 1);
+    private final int limitMax = Helpers.getEnvInt("DISCORD_LIMIT_MAX", maxPerRoute);
+    private final int limitQueue = Helpers.getEnvInt("DISCORD_LIMIT_QUEUE", 64);
+    private final long limitWaitMillis = Helpers.getEnvInt("DISCORD_LIMIT_WAIT_MS", 30_000);
+
+    @Autowired
+    public ProviderTransport(IoExecutor ioExecutor) {
+        this.ioExecutor = ioExecutor;
+    }
+
+    /*
+     *  Getters
+     */
+    public CloseableHttpClient getClient(String provider) {
+        return clients.computeIfAbsent(provider, this::createClient);
+    }
+
+    /*
+     *  One limiter per host and path, so chat and embedding endpoints of one provider back off independently.
+     */
+    public AdaptiveLimiter getLimiter(String endpoint) {
+        URI uri = URI.create(endpoint);
+        String name = uri.getHost() == null ? endpoint : uri.getHost() + uri.getPath().replace('/', '_');
+        return limiters.computeIfAbsent(name, k -> new AdaptiveLimiter(k, limitInitial, limitMin, limitMax, limitQueue, limitWaitMillis));
+    }
+
+    public Executor getExecutor() {
+        return ioExecutor;
+    }
+
+    public PoolStats getPoolStats(String provider) {
+        PoolingHttpClientConnectionManager manager = managers.get(provider);
+        return manager != null ? manager.getTotalStats() : null;
+    }
+
+    public Map<String, PoolStats> getPoolStats() {
+        Map<String, PoolStats> stats = new TreeMap<>();
+        managers.forEach((provider, manager) -> stats.put(provider, manager.getTotalStats()));
+        return stats;
+    }
+
+    /*
+     *  Helpers
+     */
+    private CloseableHttpClient createClient(String provider) {
+        PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager();
+        manager.setMaxTotal(maxTotal);
+        manager.setDefaultMaxPerRoute(maxPerRoute);
+        manager.setValidateAfterInactivity(2_000);
+        managers.put(provider, manager);
+        MetricsRegistry.gauge("transport." + provider + ".leased", () -> manager.getTotalStats().getLeased());
+        MetricsRegistry.gauge("transport." + provider + ".idle", () -> manager.getTotalStats().getAvailable());
+        MetricsRegistry.gauge("transport." + provider + ".pending", () -> manager.getTotalStats().getPending());
+        MetricsRegistry.gauge("transport." + provider + ".max", () -> manager.getTotalStats().getMax());
+        LOGGER.finer("Created pooled HTTP client for " + provider + " (max per route " + maxPerRoute + ", max total " + maxTotal + ")");
+        return HttpClients.custom()
+            .setConnectionManager(manager)
+            .setDefaultRequestConfig(REQUEST_CONFIG)
+            .setKeepAliveStrategy((response, context) -> {
+                long advertised = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                return advertised > 0 ? Math.min(advertised, keepAliveMillis) : keepAliveMillis;
+            })
+            .evictExpiredConnections()
+            .evictIdleConnections(keepAliveMillis, TimeUnit.MILLISECONDS)
+            .build();
+    }
+
+    @PreDestroy
+    public void close() {
+        clients.forEach((provider, client) -> {
+            try {
+                client.close();
+            } catch (IOException e) {
+                LOGGER.warning("Failed to close HTTP client for " + provider + ": " + e.getMessage());
+            }
+        });
+        clients.clear();
+        managers.clear();
+    }
+}
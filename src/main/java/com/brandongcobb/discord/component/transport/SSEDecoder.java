@@ -0,0 +1,154 @@
+/*  SSEDecoder.java The purpose of this class is to decode a server-sent
+ *  event stream incrementally, straight off the socket.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+ *  Frames are handed to the caller as slices of a reused buffer; a handler
+ *  must consume the bytes before returning and never hold on to the array.
+ */
+public class SSEDecoder {
+
+    private static final byte[] DATA = "data:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DONE = "[DONE]".getBytes(StandardCharsets.US_ASCII);
+    private final InputStream in;
+    private byte[] buffer;
+    private byte[] data = new byte[8192];
+    private int dataLength = 0;
+    private boolean hasData = false;
+    private int start = 0;
+    private int end = 0;
+    private long frames = 0;
+
+    @FunctionalInterface
+    public interface FrameHandler {
+        void onFrame(byte[] buf, int offset, int length) throws IOException;
+    }
+
+    public SSEDecoder(InputStream in) {
+        this(in, 8192);
+    }
+
+    public SSEDecoder(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /*
+     *  Reads until EOF or a [DONE] sentinel and returns the number of frames dispatched.
+     */
+    public long decode(FrameHandler handler) throws IOException {
+        int scan = 0;
+        while (true) {
+            int newline = indexOf((byte) '\n', start + scan, end);
+            if (newline < 0) {
+                scan = end - start;
+                if (!fill()) {
+                    if (end > start) {
+                        if (line(start, end, handler)) return frames;
+                        start = end;
+                    }
+                    dispatch(handler);
+                    return frames;
+                }
+                continue;
+            }
+            int lineEnd = newline > start && buffer[newline - 1] == '\r' ? newline - 1 : newline;
+            boolean done = line(start, lineEnd, handler);
+            start = newline + 1;
+            scan = 0;
+            if (done) return frames;
+        }
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    /*
+     *  Helpers
+     */
+    private boolean line(int from, int to, FrameHandler handler) throws IOException {
+        int length = to - from;
+        if (length == 0) {
+            return dispatch(handler);
+        }
+        if (length < DATA.length || !startsWith(from, DATA)) {
+            return false; // comments, event:, id: and retry: fields are not used by the providers
+        }
+        int valueFrom = from + DATA.length;
+        if (valueFrom < to && buffer[valueFrom] == ' ') valueFrom++;
+        int valueLength = to - valueFrom;
+        int needed = dataLength + (hasData ? 1 : 0) + valueLength;
+        if (needed > data.length) {
+            data = Arrays.copyOf(data, Math.max(needed, data.length * 2));
+        }
+        if (hasData) data[dataLength++] = '\n';
+        System.arraycopy(buffer, valueFrom, data, dataLength, valueLength);
+        dataLength += valueLength;
+        hasData = true;
+        return false;
+    }
+
+    private boolean dispatch(FrameHandler handler) throws IOException {
+        if (!hasData) return false;
+        int length = dataLength;
+        dataLength = 0;
+        hasData = false;
+        if (length == DONE.length && Arrays.equals(data, 0, length, DONE, 0, DONE.length)) {
+            return true;
+        }
+        frames++;
+        handler.onFrame(data, 0, length);
+        return false;
+    }
+
+    private boolean fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        if (end == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int read = in.read(buffer, end, buffer.length - end);
+        if (read < 0) return false;
+        end += read;
+        return true;
+    }
+
+    private int indexOf(byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == b) return i;
+        }
+        return -1;
+    }
+
+    private boolean startsWith(int from, byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[from + i] != prefix[i]) return false;
+        }
+        return true;
+    }
+}
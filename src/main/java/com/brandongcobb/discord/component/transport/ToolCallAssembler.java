@@ -0,0 +1,137 @@
+/*  ToolCallAssembler.java The purpose of this class is to stitch streamed
+ *  tool call fragments together and notice the moment each call's
+ *  arguments form a complete JSON object.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.transport;
+
+import com.brandongcobb.discord.records.ToolCall;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ *  Fragments are scanned once as they arrive: brace depth outside strings, with escapes honoured.
+ *  A call is reported exactly once, when its depth first returns to zero and the text parses.
+ *  One instance per stream; not thread-safe.
+ */
+public class ToolCallAssembler {
+
+    private final ObjectMapper mapper;
+    private final List<Entry> entries = new ArrayList<>();
+
+    public ToolCallAssembler(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /*
+     *  Adds one fragment and returns the call if this fragment completed its arguments, otherwise null.
+     */
+    public ToolCall append(int index, String id, String type, String name, String arguments) {
+        while (entries.size() <= index) entries.add(null);
+        Entry entry = entries.get(index);
+        if (entry == null) {
+            entry = new Entry();
+            entries.set(index, entry);
+        }
+        if (id != null) entry.id = id;
+        if (type != null) entry.type = type;
+        if (name != null && entry.name == null) entry.name = name;
+        if (arguments == null || entry.reported) return null;
+        entry.arguments.append(arguments);
+        if (!entry.scan(arguments) || entry.name == null) return null;
+        try {
+            JsonNode parsed = mapper.readTree(entry.arguments.toString());
+            if (parsed == null || !parsed.isObject()) return null;
+            entry.reported = true;
+            return new ToolCall(entry.id, entry.name, parsed);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /*
+     *  Getters
+     */
+    public List<Map<String, Object>> getToolCalls() {
+        List<Map<String, Object>> calls = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            if (entry != null) calls.add(entry.toMap());
+        }
+        return calls;
+    }
+
+    private static final class Entry {
+
+        private String id;
+        private String type = "function";
+        private String name;
+        private final StringBuilder arguments = new StringBuilder();
+        private int depth = 0;
+        private boolean started = false;
+        private boolean inString = false;
+        private boolean escaped = false;
+        private boolean reported = false;
+
+        /*
+         *  Returns true when the object opened by the first brace has just closed.
+         */
+        private boolean scan(String fragment) {
+            for (int i = 0; i < fragment.length(); i++) {
+                char c = fragment.charAt(i);
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    } else if (c == '\\') {
+                        escaped = true;
+                    } else if (c == '"') {
+                        inString = false;
+                    }
+                    continue;
+                }
+                switch (c) {
+                    case '"' -> inString = true;
+                    case '{', '[' -> {
+                        depth++;
+                        started = true;
+                    }
+                    case '}', ']' -> {
+                        depth--;
+                        if (started && depth == 0) return true;
+                    }
+                    default -> {}
+                }
+            }
+            return false;
+        }
+
+        private Map<String, Object> toMap() {
+            Map<String, Object> function = new LinkedHashMap<>();
+            function.put("name", name);
+            function.put("arguments", arguments.toString());
+            Map<String, Object> call = new LinkedHashMap<>();
+            call.put("id", id);
+            call.put("type", type);
+            call.put("function", function);
+            return call;
+        }
+    }
+}
@@ -18,20 +18,23 @@
  */
 package com.brandongcobb.discord.config;
 
+import com.brandongcobb.discord.component.memory.LogChatMemory;
 import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.memory.MessageWindowChatMemory;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.io.IOException;
+import java.nio.file.Path;
 
+/*
+ *  The one chat memory every service shares, persisted under DISCORD_MEMORY_DIR (./memory).
+ */
 @Configuration
 public class ChatMemoryConfig {
     
-    private static ChatMemory chatMemory = MessageWindowChatMemory.builder().build();
-    
-    @Bean
-    public ChatMemory chatMemory() {
-        return chatMemory;
+    @Bean(destroyMethod = "close")
+    public ChatMemory chatMemory() throws IOException {
+        return new LogChatMemory(Path.of(System.getenv().getOrDefault("DISCORD_MEMORY_DIR", "memory")));
     }
     
 }
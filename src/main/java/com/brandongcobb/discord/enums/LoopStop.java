@@ -0,0 +1,36 @@
+/*  LoopStop.java The purpose of this enum is to name why an agent loop
+ *  stopped.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.enums;
+
+public enum LoopStop {
+
+    DONE("done"),
+    STEP_BUDGET("step_budget"),
+    TOKEN_BUDGET("token_budget"),
+    DEADLINE("deadline"),
+    CANCELLED("cancelled"),
+    SUPERSEDED("superseded"),
+    FAILED("failed");
+
+    public final String metricName;
+
+    LoopStop(String metricName) {
+        this.metricName = metricName;
+    }
+}
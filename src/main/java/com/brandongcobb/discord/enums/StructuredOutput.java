@@ -294,6 +294,27 @@ public enum StructuredOutput {
             "required": ["type", "id", "status", "role", "content"],
             "additionalProperties": false
         }
+    """),
+
+    TOOL_CALLS("""
+        {
+            "type": "object",
+            "properties": {
+                "content": { "type": "string" },
+                "tool_calls": {
+                    "type": "array",
+                    "items": {
+                        "type": "object",
+                        "properties": {
+                            "tool": { "type": "string" },
+                            "arguments": { "type": "object" }
+                        },
+                        "required": ["tool", "arguments"]
+                    }
+                }
+            },
+            "required": ["content", "tool_calls"]
+        }
     """);
 
 
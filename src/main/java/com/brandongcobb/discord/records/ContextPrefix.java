@@ -0,0 +1,25 @@
+/*  ContextPrefix.java The purpose of this record is to describe the older
+ *  part of a conversation's context that is due to be summarized.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.records;
+
+/*
+ *  lastSequence marks where the prefix ends, so it can be swapped out later even if newer segments arrived since.
+ *  summaryTokens is the part of tokens taken by an earlier summary, which a new one would only restate.
+ */
+public record ContextPrefix(String rendered, int count, long tokens, long summaryTokens, long lastSequence) {}
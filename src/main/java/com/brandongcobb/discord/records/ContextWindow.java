@@ -0,0 +1,28 @@
+/*  ContextWindow.java The purpose of this record is to carry the messages
+ *  that fit a conversation's token budget together with their total.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.records;
+
+import org.springframework.ai.chat.messages.Message;
+
+import java.util.List;
+
+public record ContextWindow(List<Message> messages, long tokens) {
+
+    public static final ContextWindow EMPTY = new ContextWindow(List.of(), 0L);
+}
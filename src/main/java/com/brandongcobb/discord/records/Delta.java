@@ -0,0 +1,45 @@
+/*  Delta.java The purpose of this record is to carry one streamed content
+ *  fragment, a tool call whose arguments just closed, or the finished
+ *  completion at the end of a stream.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.records;
+
+import com.brandongcobb.metadata.MetadataContainer;
+
+public record Delta(String content, ToolCall toolCall, MetadataContainer completion) {
+
+    public static Delta of(String content) {
+        return new Delta(content, null, null);
+    }
+
+    public static Delta tool(ToolCall toolCall) {
+        return new Delta("", toolCall, null);
+    }
+
+    public static Delta done(MetadataContainer completion) {
+        return new Delta("", null, completion);
+    }
+
+    public boolean isDone() {
+        return completion != null;
+    }
+
+    public boolean isToolCall() {
+        return toolCall != null;
+    }
+}
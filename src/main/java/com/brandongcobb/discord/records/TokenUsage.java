@@ -0,0 +1,36 @@
+/*  TokenUsage.java The purpose of this record is to carry the prompt and
+ *  provider-cached token counts reported in a response's usage block.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.records;
+
+import java.util.Map;
+
+public record TokenUsage(long promptTokens, long cachedTokens) {
+
+    /*
+     *  Chat completions report prompt_tokens_details, the Responses API input_tokens_details; null without usage.
+     */
+    public static TokenUsage from(Map<String, Object> response) {
+        if (response == null || !(response.get("usage") instanceof Map<?, ?> usage)) return null;
+        Object prompt = usage.get("prompt_tokens") != null ? usage.get("prompt_tokens") : usage.get("input_tokens");
+        Object details = usage.get("prompt_tokens_details") != null ? usage.get("prompt_tokens_details") : usage.get("input_tokens_details");
+        long promptTokens = prompt instanceof Number n ? n.longValue() : 0L;
+        long cachedTokens = details instanceof Map<?, ?> d && d.get("cached_tokens") instanceof Number n ? n.longValue() : 0L;
+        return new TokenUsage(promptTokens, cachedTokens);
+    }
+}
@@ -21,4 +21,4 @@ package com.brandongcobb.discord.records;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
-public record ToolCall(String name, JsonNode arguments) {}
+public record ToolCall(String id, String name, JsonNode arguments) {}
@@ -0,0 +1,152 @@
+/* MetricsRegistry.java The purpose of this class is to host counters, gauges
+ * and timers for the runtime components of the application.
+ *
+ * Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.brandongcobb.discord.registry;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+public class MetricsRegistry {
+
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, Supplier<? extends Number>> GAUGES = new ConcurrentHashMap<>();
+    private static final Map<String, Timer> TIMERS = new ConcurrentHashMap<>();
+
+    /*
+     *  Counters
+     */
+    public static void increment(String name) {
+        increment(name, 1L);
+    }
+
+    public static void increment(String name, long delta) {
+        COUNTERS.computeIfAbsent(name, k -> new LongAdder()).add(delta);
+    }
+
+    public static long getCount(String name) {
+        LongAdder adder = COUNTERS.get(name);
+        return adder != null ? adder.sum() : 0L;
+    }
+
+    /*
+     *  Gauges
+     */
+    public static void gauge(String name, Supplier<? extends Number> supplier) {
+        GAUGES.put(name, supplier);
+    }
+
+    public static Number getGauge(String name) {
+        Supplier<? extends Number> supplier = GAUGES.get(name);
+        return supplier != null ? supplier.get() : null;
+    }
+
+    /*
+     *  Timers
+     */
+    public static void record(String name, long nanos) {
+        timer(name).record(nanos);
+    }
+
+    public static Timer timer(String name) {
+        return TIMERS.computeIfAbsent(name, k -> new Timer());
+    }
+
+    /*
+     *  Snapshot
+     */
+    public static Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new TreeMap<>();
+        COUNTERS.forEach((name, adder) -> snapshot.put(name, adder.sum()));
+        GAUGES.forEach((name, supplier) -> snapshot.put(name, supplier.get()));
+        TIMERS.forEach((name, timer) -> {
+            snapshot.put(name + ".count", timer.getCount());
+            snapshot.put(name + ".mean_ms", timer.getMeanMillis());
+            snapshot.put(name + ".p50_ms", timer.getPercentileMillis(50));
+            snapshot.put(name + ".p99_ms", timer.getPercentileMillis(99));
+            snapshot.put(name + ".max_ms", timer.getMaxMillis());
+        });
+        return snapshot;
+    }
+
+    /*
+     *  Keeps totals plus a ring of the most recent samples for percentiles.
+     */
+    public static final class Timer {
+
+        private static final int RESERVOIR_SIZE = 512;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder total = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+        private final long[] reservoir = new long[RESERVOIR_SIZE];
+        private final AtomicLong cursor = new AtomicLong();
+
+        public void record(long nanos) {
+            count.increment();
+            total.add(nanos);
+            max.accumulateAndGet(nanos, Math::max);
+            reservoir[(int) (cursor.getAndIncrement() % RESERVOIR_SIZE)] = nanos;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public double getMeanMillis() {
+            long n = count.sum();
+            return n == 0 ? 0.0 : (double) total.sum() / n / 1_000_000.0;
+        }
+
+        public double getMaxMillis() {
+            return max.get() / 1_000_000.0;
+        }
+
+        public double getPercentileMillis(double percentile) {
+            return getPercentileNanos(percentile) / 1_000_000.0;
+        }
+
+        public long getPercentileNanos(double percentile) {
+            int filled = (int) Math.min(cursor.get(), RESERVOIR_SIZE);
+            if (filled == 0) return 0L;
+            long[] samples = Arrays.copyOf(reservoir, filled);
+            Arrays.sort(samples);
+            int index = (int) Math.ceil(percentile / 100.0 * filled) - 1;
+            return samples[Math.max(0, Math.min(filled - 1, index))];
+        }
+
+        public long getPercentile(double percentile, TimeUnit unit) {
+            return unit.convert(getPercentileNanos(percentile), TimeUnit.NANOSECONDS);
+        }
+
+        /*
+         *  Drops warmup samples between benchmark phases; not meant to race with record.
+         */
+        public void reset() {
+            count.reset();
+            total.reset();
+            max.set(0L);
+            cursor.set(0L);
+        }
+    }
+}
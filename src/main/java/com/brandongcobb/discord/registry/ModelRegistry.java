@@ -56,7 +56,8 @@ public class ModelRegistry {
         Map.entry("google", Instructions.LLAMA_TEXT_INSTRUCTIONS_CLI.asString()),
         Map.entry("ollama", Instructions.OLLAMA_TEXT_INSTRUCTIONS_CLI.asString()),
         Map.entry("openai", Instructions.OPENAI_TEXT_INSTRUCTIONS_CLI.asString()),
-        Map.entry("openrouter", Instructions.OPENROUTER_TEXT_INSTRUCTIONS_CLI.asString())
+        Map.entry("openrouter", Instructions.OPENROUTER_TEXT_INSTRUCTIONS_CLI.asString()),
+        Map.entry("stub", Instructions.OPENAI_TEXT_INSTRUCTIONS_CLI.asString())
     );
     
     /*
@@ -84,7 +85,8 @@ public class ModelRegistry {
     public static final Map<String, String> DISCORD_TEXT_INSTRUCTIONS = Map.ofEntries(
         Map.entry("google", Instructions.GOOGLE_TEXT_INSTRUCTIONS_DISCORD.asString()),
         Map.entry("openai", Instructions.OPENAI_TEXT_INSTRUCTIONS_DISCORD.asString()),
-        Map.entry("openrouter", Instructions.OPENROUTER_TEXT_INSTRUCTIONS_DISCORD.asString())
+        Map.entry("openrouter", Instructions.OPENROUTER_TEXT_INSTRUCTIONS_DISCORD.asString()),
+        Map.entry("stub", Instructions.OPENAI_TEXT_INSTRUCTIONS_DISCORD.asString())
     );
     
     /*
@@ -165,7 +167,7 @@ public class ModelRegistry {
     );
     public static final Map<String, String> OPENAI_ENDPOINT_URLS = Map.ofEntries(
         Map.entry("audio", "https://api.openai.com/v1/audio/speech"),
-        Map.entry("batch", "https://api.openai.com/v1/audio/batches"),
+        Map.entry("batch", "https://api.openai.com/v1/batches"),
         Map.entry("completions", "https://api.openai.com/v1/completions"),
         Map.entry("embeddings", "https://api.openai.com/v1/embeddings"),
         Map.entry("files", "https://api.openai.com/v1/files"),
@@ -237,6 +239,15 @@ public class ModelRegistry {
         Map.entry("moderations", "https://openrouter.ai/api/v1/chat/completions"),
         Map.entry("responses", "https://openrouter.ai/api/v1/chat/completions")
     );
+
+    /*
+     *  stub
+     */
+    public static final String STUB_BASE_URL = System.getenv().getOrDefault("DISCORD_STUB_URL", "http://127.0.0.1:18080/v1");
+    public static final Map<String, String> STUB_ENDPOINT_URLS = Map.ofEntries(
+        Map.entry("deprecated", STUB_BASE_URL + "/chat/completions"),
+        Map.entry("response", STUB_BASE_URL + "/responses")
+    );
     /*
      *  Getters
      */
@@ -254,6 +265,8 @@ public class ModelRegistry {
                 endpoint = OPENAI_CLI_ENDPOINT_URLS.get(requestType);
             } else if ("openrouter".equals(provider)) {
                 endpoint = OPENROUTER_CLI_ENDPOINT_URLS.get(requestType);
+            } else if ("stub".equals(provider)) {
+                endpoint = STUB_ENDPOINT_URLS.get(requestType);
             }
         } else if ("discord".equals(sourceOfRequest)) {
             if ("latest".equals(provider)) {
@@ -276,6 +289,8 @@ public class ModelRegistry {
                 endpoint = multimodal
                     ? OPENROUTER_DISCORD_MULTIMODAL_ENDPOINT_URLS.get(requestType)
                     : OPENROUTER_DISCORD_TEXT_ENDPOINT_URLS.get(requestType);
+            } else if ("stub".equals(provider)) {
+                endpoint = STUB_ENDPOINT_URLS.get(requestType);
             }
         } else if ("twitch".equals(sourceOfRequest)) {
         }
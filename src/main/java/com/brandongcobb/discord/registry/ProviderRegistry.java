@@ -0,0 +1,72 @@
+/*  ProviderRegistry.java The purpose of this class is to index every
+ *  provider adapter by the endpoints it serves.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.registry;
+
+import com.brandongcobb.discord.Application;
+import com.brandongcobb.discord.component.provider.ProviderAdapter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+@Component
+public class ProviderRegistry {
+
+    private static final Logger LOGGER = Logger.getLogger(Application.class.getName());
+    private final Map<String, ProviderAdapter> adaptersByEndpoint;
+    private final Map<String, ProviderAdapter> adaptersByName;
+
+    @Autowired
+    public ProviderRegistry(List<ProviderAdapter> adapters) {
+        Map<String, ProviderAdapter> byEndpoint = new HashMap<>();
+        Map<String, ProviderAdapter> byName = new HashMap<>();
+        for (ProviderAdapter adapter : adapters) {
+            byName.put(adapter.getName(), adapter);
+            for (String endpoint : adapter.getEndpoints()) {
+                if (endpoint == null || "placeholder".equals(endpoint)) continue;
+                ProviderAdapter existing = byEndpoint.putIfAbsent(endpoint, adapter);
+                if (existing != null && existing != adapter) {
+                    LOGGER.warning("Endpoint " + endpoint + " is claimed by both " + existing.getName() + " and " + adapter.getName() + "; keeping " + existing.getName());
+                }
+            }
+        }
+        this.adaptersByEndpoint = Collections.unmodifiableMap(byEndpoint);
+        this.adaptersByName = Collections.unmodifiableMap(byName);
+    }
+
+    /*
+     *  Getters
+     */
+    public ProviderAdapter getAdapter(String endpoint) {
+        return endpoint == null ? null : adaptersByEndpoint.get(endpoint);
+    }
+
+    public ProviderAdapter getAdapterByName(String provider) {
+        return provider == null ? null : adaptersByName.get(provider);
+    }
+
+    public Collection<ProviderAdapter> getAdapters() {
+        return adaptersByName.values();
+    }
+}
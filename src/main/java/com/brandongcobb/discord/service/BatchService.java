@@ -0,0 +1,293 @@
+/*  BatchService.java The purpose of this class is to run non-interactive
+ *  completions through the provider batch API instead of one call each.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.service;
+
+import com.brandongcobb.discord.Application;
+import com.brandongcobb.discord.component.provider.ProviderHttpException;
+import com.brandongcobb.discord.component.transport.ProviderTransport;
+import com.brandongcobb.discord.registry.MetricsRegistry;
+import com.brandongcobb.discord.utils.inc.Helpers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/*
+ *  Requests accumulate per endpoint until DISCORD_BATCH_MAX_REQUESTS or DISCORD_BATCH_FLUSH_MS,
+ *  then go out as one JSONL file. The files and batches calls go to the endpoint's own host and version
+ *  prefix (https://api.openai.com/v1 for https://api.openai.com/v1/chat/completions); DISCORD_BATCH_BASE_URL,
+ *  when set, points the whole flow at a stand-in server instead.
+ */
+@Service
+public class BatchService {
+
+    private static final Logger LOGGER = Logger.getLogger(Application.class.getName());
+    private static final String CLIENT = "batch";
+    private static final Set<String> TERMINAL = Set.of("completed", "failed", "expired", "cancelled");
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ProviderTransport transport;
+    private final String baseUrl;
+    private final String apiKeyEnv = System.getenv().getOrDefault("DISCORD_BATCH_API_KEY_ENV", "OPENAI_API_KEY");
+    private final String completionWindow = System.getenv().getOrDefault("DISCORD_BATCH_WINDOW", "24h");
+    private final int maxRequests = Helpers.getEnvInt("DISCORD_BATCH_MAX_REQUESTS", 500);
+    private final long flushMillis = Helpers.getEnvInt("DISCORD_BATCH_FLUSH_MS", 60_000);
+    private final long pollMillis;
+    private final AtomicLong counter = new AtomicLong();
+    private final Map<String, List<PendingRequest>> pending = new HashMap<>();
+
+    @Autowired
+    public BatchService(ProviderTransport transport) {
+        this(transport, System.getenv("DISCORD_BATCH_BASE_URL"), Helpers.getEnvInt("DISCORD_BATCH_POLL_MS", 30_000));
+    }
+
+    /*
+     *  A null baseUrl derives it from each request's endpoint.
+     */
+    public BatchService(ProviderTransport transport, String baseUrl, long pollMillis) {
+        this.transport = transport;
+        this.baseUrl = baseUrl;
+        this.pollMillis = pollMillis;
+        MetricsRegistry.gauge("batch.pending", this::getPending);
+    }
+
+    /*
+     *  endpoint is the full URL the request would otherwise be posted to, e.g. https://api.openai.com/v1/chat/completions;
+     *  its path is what the batch API replays each line against. The future completes with that line's response body
+     *  once the batch finishes.
+     */
+    public CompletableFuture<Map<String, Object>> completeRequest(String endpoint, Map<String, Object> body) {
+        URI uri;
+        try {
+            uri = URI.create(endpoint);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(new IllegalStateException("completeRequest failed: Invalid endpoint " + endpoint, e));
+        }
+        if (uri.getScheme() == null || uri.getRawAuthority() == null || uri.getRawPath() == null || uri.getRawPath().isEmpty()) {
+            return CompletableFuture.failedFuture(new IllegalStateException("completeRequest failed: Invalid endpoint " + endpoint));
+        }
+        PendingRequest request = new PendingRequest("req-" + counter.incrementAndGet(), uri.getRawPath(), body, new CompletableFuture<>());
+        List<PendingRequest> ready = null;
+        boolean schedule;
+        synchronized (pending) {
+            List<PendingRequest> queue = pending.computeIfAbsent(endpoint, k -> new ArrayList<>());
+            schedule = queue.isEmpty();
+            queue.add(request);
+            if (queue.size() >= maxRequests) {
+                ready = pending.remove(endpoint);
+                schedule = false;
+            }
+        }
+        if (ready != null) {
+            submit(uri, ready);
+        } else if (schedule) {
+            CompletableFuture.delayedExecutor(flushMillis, TimeUnit.MILLISECONDS, transport.getExecutor()).execute(() -> flush(endpoint));
+        }
+        return request.result();
+    }
+
+    public void flush() {
+        List<String> endpoints;
+        synchronized (pending) {
+            endpoints = new ArrayList<>(pending.keySet());
+        }
+        endpoints.forEach(this::flush);
+    }
+
+    public int getPending() {
+        synchronized (pending) {
+            return pending.values().stream().mapToInt(List::size).sum();
+        }
+    }
+
+    /*
+     *  Helpers
+     */
+    private void flush(String endpoint) {
+        List<PendingRequest> ready;
+        synchronized (pending) {
+            ready = pending.remove(endpoint);
+        }
+        if (ready != null && !ready.isEmpty()) submit(URI.create(endpoint), ready);
+    }
+
+    private void submit(URI endpoint, List<PendingRequest> requests) {
+        String base = baseUrl != null ? baseUrl : baseUrl(endpoint);
+        String path = endpoint.getRawPath();
+        Map<String, PendingRequest> byId = new LinkedHashMap<>();
+        requests.forEach(request -> byId.put(request.customId(), request));
+        CompletableFuture.supplyAsync(() -> {
+            try {
+                String fileId = (String) upload(base, requests).get("id");
+                Map<String, Object> create = new LinkedHashMap<>();
+                create.put("input_file_id", fileId);
+                create.put("endpoint", path);
+                create.put("completion_window", completionWindow);
+                HttpPost post = new HttpPost(base + "/batches");
+                post.setEntity(new ByteArrayEntity(mapper.writeValueAsBytes(create), ContentType.APPLICATION_JSON));
+                Map<String, Object> batch = execute(post);
+                MetricsRegistry.increment("batch.submitted");
+                MetricsRegistry.increment("batch.requests", requests.size());
+                LOGGER.fine("Submitted batch " + batch.get("id") + " with " + requests.size() + " requests to " + base + " for " + path);
+                return (String) batch.get("id");
+            } catch (IOException e) {
+                throw new IllegalStateException("submit failed: " + e.getMessage(), e);
+            }
+        }, transport.getExecutor()).whenComplete((batchId, error) -> {
+            if (error != null) {
+                fail(byId, error);
+            } else {
+                poll(base, batchId, byId, System.nanoTime());
+            }
+        });
+    }
+
+    /*
+     *  Keeps the first path segment as the API version prefix: /v1/chat/completions on a host maps to host/v1.
+     */
+    private static String baseUrl(URI endpoint) {
+        String path = endpoint.getRawPath();
+        int next = path.indexOf('/', 1);
+        String prefix = next > 0 ? path.substring(0, next) : "";
+        return endpoint.getScheme() + "://" + endpoint.getRawAuthority() + prefix;
+    }
+
+    private void poll(String base, String batchId, Map<String, PendingRequest> byId, long started) {
+        CompletableFuture.delayedExecutor(pollMillis, TimeUnit.MILLISECONDS, transport.getExecutor()).execute(() -> {
+            try {
+                Map<String, Object> batch = execute(new HttpGet(base + "/batches/" + batchId));
+                String status = String.valueOf(batch.get("status"));
+                if (!TERMINAL.contains(status)) {
+                    poll(base, batchId, byId, started);
+                    return;
+                }
+                MetricsRegistry.record("batch.duration", System.nanoTime() - started);
+                if (batch.get("output_file_id") instanceof String outputFileId) route(download(base, outputFileId), byId);
+                if (batch.get("error_file_id") instanceof String errorFileId) route(download(base, errorFileId), byId);
+                fail(byId, new IllegalStateException("Batch " + batchId + " ended " + status + " without a result for this request"));
+            } catch (Exception e) {
+                fail(byId, e);
+            }
+        });
+    }
+
+    /*
+     *  Output lines look like {"custom_id": ..., "response": {"status_code": ..., "body": {...}}, "error": ...}.
+     */
+    private void route(String jsonl, Map<String, PendingRequest> byId) throws IOException {
+        for (String line : jsonl.split("\n")) {
+            if (line.isBlank()) continue;
+            Map<String, Object> entry = mapper.readValue(line, new TypeReference<Map<String, Object>>() {});
+            PendingRequest request = byId.remove(String.valueOf(entry.get("custom_id")));
+            if (request == null) continue;
+            Map<?, ?> response = entry.get("response") instanceof Map<?, ?> r ? r : null;
+            int code = response != null && response.get("status_code") instanceof Number n ? n.intValue() : 0;
+            if (response != null && code >= 200 && code < 300 && response.get("body") instanceof Map<?, ?> body) {
+                MetricsRegistry.increment("batch.completed");
+                request.result().complete(mapper.convertValue(body, new TypeReference<Map<String, Object>>() {}));
+            } else {
+                MetricsRegistry.increment("batch.failed");
+                String detail = entry.get("error") != null ? String.valueOf(entry.get("error")) : String.valueOf(response);
+                request.result().completeExceptionally(new ProviderHttpException(CLIENT, code, 0L, detail));
+            }
+        }
+    }
+
+    private void fail(Map<String, PendingRequest> byId, Throwable error) {
+        if (byId.isEmpty()) return;
+        LOGGER.warning("Batch failed for " + byId.size() + " requests: " + error.getMessage());
+        MetricsRegistry.increment("batch.failed", byId.size());
+        byId.values().forEach(request -> request.result().completeExceptionally(error));
+        byId.clear();
+    }
+
+    /*
+     *  The files endpoint only takes multipart/form-data, written by hand since httpmime is not on the classpath.
+     */
+    private Map<String, Object> upload(String base, List<PendingRequest> requests) throws IOException {
+        String boundary = "----discord-batch-" + UUID.randomUUID();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"purpose\"\r\n\r\nbatch\r\n").getBytes(StandardCharsets.UTF_8));
+        out.write(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"batch.jsonl\"\r\nContent-Type: application/jsonl\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        for (PendingRequest request : requests) {
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("custom_id", request.customId());
+            line.put("method", "POST");
+            line.put("url", request.url());
+            line.put("body", request.body());
+            out.write(mapper.writeValueAsBytes(line));
+            out.write('\n');
+        }
+        out.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        HttpPost post = new HttpPost(base + "/files");
+        post.setEntity(new ByteArrayEntity(out.toByteArray(), ContentType.create("multipart/form-data").withParameters(new BasicNameValuePair("boundary", boundary))));
+        return execute(post);
+    }
+
+    private String download(String base, String fileId) throws IOException {
+        HttpGet get = new HttpGet(base + "/files/" + fileId + "/content");
+        authorize(get);
+        try (CloseableHttpResponse resp = transport.getClient(CLIENT).execute(get)) {
+            String body = EntityUtils.toString(resp.getEntity(), StandardCharsets.UTF_8);
+            int code = resp.getStatusLine().getStatusCode();
+            if (code < 200 || code >= 300) throw new ProviderHttpException(CLIENT, code, 0L, body);
+            return body;
+        }
+    }
+
+    private Map<String, Object> execute(HttpRequestBase request) throws IOException {
+        authorize(request);
+        try (CloseableHttpResponse resp = transport.getClient(CLIENT).execute(request)) {
+            String body = EntityUtils.toString(resp.getEntity(), StandardCharsets.UTF_8);
+            int code = resp.getStatusLine().getStatusCode();
+            if (code < 200 || code >= 300) throw new ProviderHttpException(CLIENT, code, 0L, body);
+            return mapper.readValue(body, new TypeReference<Map<String, Object>>() {});
+        }
+    }
+
+    private void authorize(HttpRequestBase request) {
+        String apiKey = System.getenv(apiKeyEnv);
+        if (apiKey != null && !apiKey.isEmpty()) request.setHeader("Authorization", "Bearer " + apiKey);
+    }
+
+    private record PendingRequest(String customId, String url, Map<String, Object> body, CompletableFuture<Map<String, Object>> result) {}
+}
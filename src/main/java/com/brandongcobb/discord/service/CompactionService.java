@@ -0,0 +1,216 @@
+/*  CompactionService.java The purpose of this class is to summarize the
+ *  older part of a conversation with a cheaper model once its context
+ *  nears the budget, keeping recent turns verbatim.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.service;
+
+import com.brandongcobb.discord.Application;
+import com.brandongcobb.discord.component.memory.LogChatMemory;
+import com.brandongcobb.discord.records.ContextPrefix;
+import com.brandongcobb.discord.registry.MetricsRegistry;
+import com.brandongcobb.discord.registry.ModelRegistry;
+import com.brandongcobb.discord.utils.inc.Helpers;
+import com.brandongcobb.metadata.Metadata;
+import com.brandongcobb.metadata.MetadataKey;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/*
+ *  Compaction starts in the background once a conversation passes DISCORD_COMPACTION_THRESHOLD_PERCENT (75) of its
+ *  budget; at most one runs per conversation. Everything but the newest DISCORD_COMPACTION_KEEP_RECENT (6) messages
+ *  is summarized by DISCORD_COMPACTION_PROVIDER/DISCORD_COMPACTION_MODEL (the main provider and model when unset)
+ *  and swapped for the summary. Turns that arrive meanwhile are kept: the swap only replaces what was summarized.
+ *  The summary is written to chat memory as well, replacing the stored turns it covers, so a restart restores it.
+ *  A summary plus the recent turns can still sit above the threshold, so background compaction is tried at most once
+ *  per DISCORD_COMPACTION_COOLDOWN_MS (60000) and only when at least DISCORD_COMPACTION_MIN_TOKENS (1024) of the
+ *  prefix is new since the last summary; otherwise it would re-summarize its own summary on every message.
+ *  With DISCORD_COMPACTION_BATCH=true the background summaries go through the provider's batch API (OpenAI-compatible
+ *  providers only; others summarize directly). An overflowed
+ *  request never waits on one of those: it compacts directly and the batch result, when it lands, is dropped.
+ */
+@Service
+public class CompactionService {
+
+    private static final Logger LOGGER = Logger.getLogger(Application.class.getName());
+    private static final String INSTRUCTIONS = "You compress chat transcripts. Summarize the conversation below so an assistant can continue it "
+        + "without the original. Keep every decision, open task, user preference, ID, name and number that may matter later; "
+        + "drop greetings and repetition. Reply with the summary only, as plain text.";
+    private final AIService ais;
+    private final ContextService contextService;
+    private final ChatMemory chatMemory;
+    private final ModelRegistry modelRegistry = new ModelRegistry();
+    private final String provider;
+    private final String model;
+    private final boolean batch;
+    private final int thresholdPercent = Helpers.getEnvInt("DISCORD_COMPACTION_THRESHOLD_PERCENT", 75);
+    private final int keepRecent = Helpers.getEnvInt("DISCORD_COMPACTION_KEEP_RECENT", 6);
+    private final long minTokens = Helpers.getEnvInt("DISCORD_COMPACTION_MIN_TOKENS", 1024);
+    private final long cooldownNanos = Helpers.getEnvInt("DISCORD_COMPACTION_COOLDOWN_MS", 60_000) * 1_000_000L;
+    private final Map<String, Long> lastTried = new ConcurrentHashMap<>();
+    private final Map<String, Flight> running = new ConcurrentHashMap<>();
+
+    @Autowired
+    public CompactionService(AIService ais, ContextService contextService, ChatMemory chatMemory) {
+        this(ais, contextService, chatMemory,
+            System.getenv().getOrDefault("DISCORD_COMPACTION_PROVIDER", System.getenv("DISCORD_PROVIDER")),
+            System.getenv().getOrDefault("DISCORD_COMPACTION_MODEL", System.getenv("DISCORD_MODEL")),
+            Helpers.getEnvBoolean("DISCORD_COMPACTION_BATCH", false));
+    }
+
+    public CompactionService(AIService ais, ContextService contextService, ChatMemory chatMemory, String provider, String model, boolean batch) {
+        this.ais = ais;
+        this.contextService = contextService;
+        this.chatMemory = chatMemory;
+        this.provider = provider;
+        this.model = model;
+        this.batch = batch && ais.supportsBatch(provider);
+        if (batch && !this.batch) {
+            LOGGER.warning("DISCORD_COMPACTION_BATCH ignored: provider `" + provider + "` has no batch API");
+        }
+    }
+
+    /*
+     *  Cheap enough to call after every message: starts a background compaction only past the threshold.
+     */
+    public void maybeCompact(String conversationId, String model) {
+        long budget = contextService.getBudget(model);
+        if (contextService.getTokens(conversationId) * 100 < budget * thresholdPercent) return;
+        long now = System.nanoTime();
+        Long last = lastTried.get(conversationId);
+        if (last != null && now - last < cooldownNanos) return;
+        lastTried.put(conversationId, now);
+        completeCompact(conversationId, model, batch, minTokens).exceptionally(ex -> false);
+    }
+
+    /*
+     *  Completes with true when older turns were replaced by a summary; joins a compaction already in flight
+     *  unless that one is batched and this caller cannot wait for it.
+     */
+    public CompletableFuture<Boolean> completeCompact(String conversationId, String model, boolean batched) {
+        return completeCompact(conversationId, model, batched, 1L);
+    }
+
+    /*
+     *  minimum is how many prefix tokens must be new since the last summary for another one to be worth a request.
+     */
+    private CompletableFuture<Boolean> completeCompact(String conversationId, String model, boolean batched, long minimum) {
+        Flight flight = new Flight(new CompletableFuture<>(), batched);
+        Flight existing = running.putIfAbsent(conversationId, flight);
+        if (existing != null && (batched || !existing.batched() || !running.replace(conversationId, existing, flight))) {
+            return existing.result();
+        }
+        if (existing != null) MetricsRegistry.increment("compaction.superseded");
+        CompletableFuture<Boolean> started = flight.result();
+        ContextPrefix prefix = contextService.getPrefix(conversationId, keepRecent);
+        if (prefix == null || prefix.tokens() - prefix.summaryTokens() < minimum) {
+            if (prefix != null) MetricsRegistry.increment("compaction.skipped");
+            running.remove(conversationId, flight);
+            started.complete(false);
+            return started;
+        }
+        MetricsRegistry.increment(batched ? "compaction.started.batch" : "compaction.started");
+        long begun = System.nanoTime();
+        completeSummarize(prefix.rendered(), batched)
+            .thenApply(summary -> {
+                if (summary == null || summary.isBlank()) throw new IllegalStateException("empty summary");
+                // A direct compaction took over while this one was queued; its summary already covers this range.
+                if (!running.remove(conversationId, flight)) return false;
+                Message message = new UserMessage("[Summary of the earlier conversation]\n" + summary.strip());
+                int replaced = contextService.replacePrefix(conversationId, model, prefix.lastSequence(), message,
+                    kept -> persist(conversationId, message, kept));
+                if (replaced > 0) {
+                    MetricsRegistry.increment("compaction.completed");
+                    MetricsRegistry.increment("compaction.messages", replaced);
+                    LOGGER.fine("Compacted " + replaced + " message(s) of " + conversationId + " (" + prefix.tokens() + " tokens)");
+                }
+                return replaced > 0;
+            })
+            .whenComplete((compacted, error) -> {
+                MetricsRegistry.record(batched ? "compaction.latency.batch" : "compaction.latency", System.nanoTime() - begun);
+                running.remove(conversationId, flight);
+                if (error != null) {
+                    MetricsRegistry.increment("compaction.failed");
+                    LOGGER.warning("Compaction of " + conversationId + " failed: " + error.getMessage());
+                    started.completeExceptionally(error);
+                } else {
+                    started.complete(compacted);
+                }
+            });
+        return started;
+    }
+
+    /*
+     *  For a request that already overflowed: compact now, and if that fails drop the oldest turns instead.
+     *  Completes with the number of messages dropped (0 when the summary took their place).
+     */
+    public CompletableFuture<Integer> completeReclaim(String conversationId, String model) {
+        return completeCompact(conversationId, model, false)
+            .exceptionally(ex -> false)
+            .thenApply(compacted -> {
+                if (compacted) return 0;
+                int dropped = contextService.dropOldest(conversationId, keepRecent);
+                if (dropped > 0) MetricsRegistry.increment("compaction.dropped", dropped);
+                return dropped;
+            });
+    }
+
+    /*
+     *  Helpers
+     */
+    /*
+     *  Both sides end in the same turns, so the summary replaces everything in memory but the newest keep messages.
+     */
+    private void persist(String conversationId, Message summary, int keep) {
+        if (chatMemory instanceof LogChatMemory log) {
+            log.summarize(conversationId, summary, keep);
+            return;
+        }
+        List<Message> stored = chatMemory.get(conversationId);
+        List<Message> rewritten = new ArrayList<>(keep + 1);
+        rewritten.add(summary);
+        rewritten.addAll(stored.subList(Math.max(0, stored.size() - keep), stored.size()));
+        chatMemory.clear(conversationId);
+        chatMemory.add(conversationId, rewritten);
+    }
+
+    private CompletableFuture<String> completeSummarize(String transcript, boolean batched) {
+        long promptTokens = (long) Math.ceil(transcript.length() / 4.0);
+        return modelRegistry.completeGetAIEndpoint(false, provider, "discord", "deprecated")
+            .thenCompose(endpoint -> {
+                if (batched) return ais.completeBatchRequest(INSTRUCTIONS, transcript, model, "summary", endpoint, promptTokens);
+                try {
+                    return ais.completeRequest(INSTRUCTIONS, transcript, List.of(), null, model, "summary", endpoint, false, null, provider, promptTokens);
+                } catch (Exception e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+            })
+            .thenApply(container -> container.get(new MetadataKey<>("content", Metadata.STRING)));
+    }
+
+    private record Flight(CompletableFuture<Boolean> result, boolean batched) {}
+}
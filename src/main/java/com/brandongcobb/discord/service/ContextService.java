@@ -0,0 +1,323 @@
+/*  ContextService.java The purpose of this class is to keep a rolling,
+ *  token-counted context for every conversation, trimmed to the model's
+ *  context budget as messages arrive.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.service;
+
+import com.brandongcobb.discord.Application;
+import com.brandongcobb.discord.records.ContextPrefix;
+import com.brandongcobb.discord.records.ContextWindow;
+import com.brandongcobb.discord.records.ModelInfo;
+import com.brandongcobb.discord.registry.MetricsRegistry;
+import com.brandongcobb.discord.registry.ModelRegistry;
+import com.brandongcobb.discord.utils.inc.Helpers;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+import java.util.logging.Logger;
+
+/*
+ *  Each message is counted and rendered once, when it is appended; the oldest segments fall off the front
+ *  whenever the total passes the budget, so a turn costs O(new messages) rather than O(history).
+ *  The budget is the model's limit from RESPONSE_MODEL_CONTEXT_LIMITS (DISCORD_CONTEXT_LIMIT, 32768, for
+ *  unknown models) less DISCORD_CONTEXT_RESERVE (8192) for instructions and the reply.
+ */
+@Service
+public class ContextService {
+
+    private static final Logger LOGGER = Logger.getLogger(Application.class.getName());
+    private final TokenService tokenService;
+    private final long defaultLimit = Helpers.getEnvInt("DISCORD_CONTEXT_LIMIT", 32_768);
+    private final long reserve = Helpers.getEnvInt("DISCORD_CONTEXT_RESERVE", 8_192);
+    private final Map<String, Context> contexts = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ContextService(TokenService tokenService) {
+        this.tokenService = tokenService;
+    }
+
+    public void append(String conversationId, String model, Message message) {
+        append(conversationId, model, message, null);
+    }
+
+    /*
+     *  Runs store, if given, under the same monitor as replacePrefix's persist, so a message written to chat memory
+     *  is always in the context too by the time a summary counts what it kept.
+     */
+    public void append(String conversationId, String model, Message message, Runnable store) {
+        Context context = contexts.computeIfAbsent(conversationId, k -> new Context());
+        int trimmed = context.append(message, render(message), tokenService.countMessage(model, message), getBudget(model), store);
+        if (trimmed > 0) {
+            MetricsRegistry.increment("context.trimmed", trimmed);
+            LOGGER.finer("Trimmed " + trimmed + " message(s) from " + conversationId);
+        }
+    }
+
+    public void clear(String conversationId) {
+        contexts.remove(conversationId);
+    }
+
+    /*
+     *  Drops all but the newest keepRecent segments; returns how many went.
+     */
+    public int dropOldest(String conversationId, int keepRecent) {
+        Context context = contexts.get(conversationId);
+        int dropped = context == null ? 0 : context.dropOldest(keepRecent);
+        if (dropped > 0) MetricsRegistry.increment("context.trimmed", dropped);
+        return dropped;
+    }
+
+    /*
+     *  Swaps every segment up to and including lastSequence for one summary segment at the front.
+     *  Segments trimmed or appended in the meantime are fine; returns how many segments were replaced.
+     *  When something was replaced, persist gets the number of segments kept after the summary, still under the lock.
+     */
+    public int replacePrefix(String conversationId, String model, long lastSequence, Message summary, IntConsumer persist) {
+        Context context = contexts.get(conversationId);
+        if (context == null) return 0;
+        return context.replacePrefix(lastSequence, summary, render(summary), tokenService.countMessage(model, summary), persist);
+    }
+
+    /*
+     *  Getters
+     */
+    public long getBudget(String model) {
+        ModelInfo info = model == null ? null : ModelRegistry.RESPONSE_MODEL_CONTEXT_LIMITS.get(model);
+        if (info == null && model != null) info = ModelRegistry.OPENROUTER_RESPONSE_MODEL_CONTEXT_LIMITS.get(model);
+        long limit = info != null && info.upperLimit() != null ? info.upperLimit() : defaultLimit;
+        return Math.max(limit / 4, limit - reserve);
+    }
+
+    /*
+     *  Everything but the newest keepRecent segments, or null when there is nothing older to summarize.
+     */
+    public ContextPrefix getPrefix(String conversationId, int keepRecent) {
+        Context context = contexts.get(conversationId);
+        return context == null ? null : context.prefix(keepRecent);
+    }
+
+    /*
+     *  How many segments the context holds; a summary counts as one.
+     */
+    public int getSize(String conversationId) {
+        Context context = contexts.get(conversationId);
+        return context == null ? 0 : context.size();
+    }
+
+    public long getTokens(String conversationId) {
+        Context context = contexts.get(conversationId);
+        return context == null ? 0L : context.tokens();
+    }
+
+    /*
+     *  The messages that fit the budget, oldest first, with their token total.
+     */
+    public ContextWindow getWindow(String conversationId) {
+        Context context = contexts.get(conversationId);
+        return context == null ? ContextWindow.EMPTY : context.window();
+    }
+
+    /*
+     *  The window as "TYPE: text" lines, kept pre-rendered alongside the segments.
+     */
+    public String getRendered(String conversationId) {
+        Context context = contexts.get(conversationId);
+        String rendered = context == null ? "" : context.rendered();
+        return rendered.isEmpty() ? "No conversation context available." : rendered;
+    }
+
+    /*
+     *  Helpers
+     */
+    private static String render(Message message) {
+        if (message instanceof ToolResponseMessage toolMsg) {
+            List<ToolResponseMessage.ToolResponse> responses = toolMsg.getResponses();
+            if (responses.isEmpty()) {
+                return message.getMessageType() + ": [no tool response data]";
+            }
+            StringBuilder text = new StringBuilder();
+            for (ToolResponseMessage.ToolResponse response : responses) {
+                if (!text.isEmpty()) text.append('\n');
+                text.append(response.responseData());
+            }
+            return message.getMessageType() + ": " + text;
+        }
+        String text = message.getText();
+        return message.getMessageType() + ": " + (text != null ? text : "[no text]");
+    }
+
+    private record Segment(long sequence, Message message, String rendered, int tokens, boolean summary) {}
+
+    /*
+     *  A window over segments[from, from + size). Context never writes into that range again, so the view is a
+     *  stable snapshot for as long as the caller holds it.
+     */
+    private static final class MessageView extends AbstractList<Message> implements RandomAccess {
+
+        private final Segment[] segments;
+        private final int from;
+        private final int size;
+
+        private MessageView(Segment[] segments, int from, int size) {
+            this.segments = segments;
+            this.from = from;
+            this.size = size;
+        }
+
+        @Override
+        public Message get(int index) {
+            return segments[from + Objects.checkIndex(index, size)].message();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /*
+     *  Segments live in segments[head, tail): appends write past tail and evictions only move head, so a window is
+     *  a view rather than a copy. The array is only ever replaced, never rewritten, once it runs out of room.
+     *  The rendered text drops evicted lines by moving renderedStart and is compacted once half of it is dead.
+     *  A summary changes the prefix, so it rebuilds both; that happens once per compaction, not per turn.
+     */
+    private static final class Context {
+
+        private Segment[] segments = new Segment[16];
+        private int head = 0;
+        private int tail = 0;
+        private final StringBuilder rendered = new StringBuilder();
+        private int renderedStart = 0;
+        private long tokens = 0L;
+        private long nextSequence = 0L;
+
+        /*
+         *  Returns how many segments were trimmed; the newest segment always stays.
+         */
+        private synchronized int append(Message message, String text, int count, long budget, Runnable store) {
+            if (store != null) store.run();
+            Segment segment = new Segment(nextSequence++, message, text, count, false);
+            if (tail == segments.length) reallocate(0);
+            segments[tail++] = segment;
+            tokens += segment.tokens();
+            if (renderedStart < rendered.length()) rendered.append('\n');
+            rendered.append(segment.rendered());
+            int trimmed = 0;
+            while (tokens > budget && tail - head > 1) {
+                removeOldest();
+                trimmed++;
+            }
+            return trimmed;
+        }
+
+        private synchronized int dropOldest(int keepRecent) {
+            int dropped = 0;
+            while (tail - head > Math.max(1, keepRecent)) {
+                removeOldest();
+                dropped++;
+            }
+            return dropped;
+        }
+
+        private synchronized ContextPrefix prefix(int keepRecent) {
+            int count = tail - head - keepRecent;
+            if (count < 1) return null;
+            StringBuilder text = new StringBuilder();
+            long prefixTokens = 0L;
+            long summaryTokens = 0L;
+            for (int i = head; i < head + count; i++) {
+                if (!text.isEmpty()) text.append('\n');
+                text.append(segments[i].rendered());
+                prefixTokens += segments[i].tokens();
+                if (segments[i].summary()) summaryTokens += segments[i].tokens();
+            }
+            return new ContextPrefix(text.toString(), count, prefixTokens, summaryTokens, segments[head + count - 1].sequence());
+        }
+
+        private synchronized int replacePrefix(long lastSequence, Message summary, String text, int count, IntConsumer persist) {
+            int replaced = 0;
+            long firstSequence = head == tail ? nextSequence : segments[head].sequence();
+            while (head < tail && segments[head].sequence() <= lastSequence) {
+                removeOldest();
+                replaced++;
+            }
+            if (replaced == 0) return 0;
+            // The summary takes the first replaced sequence so it still sorts ahead of everything it replaced.
+            reallocate(1);
+            segments[0] = new Segment(firstSequence, summary, text, count, true);
+            head = 0;
+            tokens += count;
+            rendered.setLength(0);
+            renderedStart = 0;
+            for (int i = head; i < tail; i++) {
+                if (i > head) rendered.append('\n');
+                rendered.append(segments[i].rendered());
+            }
+            persist.accept(tail - head - 1);
+            return replaced;
+        }
+
+        private void removeOldest() {
+            Segment oldest = segments[head++];
+            tokens -= oldest.tokens();
+            renderedStart = Math.min(rendered.length(), renderedStart + oldest.rendered().length() + 1);
+            if (renderedStart > rendered.length() / 2) {
+                rendered.delete(0, renderedStart);
+                renderedStart = 0;
+            }
+        }
+
+        /*
+         *  Moves the live segments into a fresh array, leaving room for `front` segments ahead of them and as many
+         *  again behind them; windows handed out earlier keep the old array.
+         */
+        private void reallocate(int front) {
+            int size = tail - head;
+            Segment[] next = new Segment[Math.max(16, (size + front) * 2)];
+            System.arraycopy(segments, head, next, front, size);
+            segments = next;
+            head = front;
+            tail = front + size;
+        }
+
+        private synchronized int size() {
+            return tail - head;
+        }
+
+        private synchronized long tokens() {
+            return tokens;
+        }
+
+        private synchronized ContextWindow window() {
+            return head == tail ? ContextWindow.EMPTY : new ContextWindow(new MessageView(segments, head, tail - head), tokens);
+        }
+
+        private synchronized String rendered() {
+            return rendered.substring(renderedStart);
+        }
+    }
+}
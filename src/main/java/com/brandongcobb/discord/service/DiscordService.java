@@ -20,198 +20,231 @@
 package com.brandongcobb.discord.service;
 
 import com.brandongcobb.discord.Application;
-import com.brandongcobb.discord.component.bot.DiscordBot;
-import com.brandongcobb.discord.component.server.CustomMCPServer;
+import com.brandongcobb.discord.component.executor.IoExecutor;
+import com.brandongcobb.discord.component.provider.ProviderHttpException;
+import com.brandongcobb.discord.component.session.AgentLoop;
+import com.brandongcobb.discord.component.session.LoopScheduler;
+import com.brandongcobb.discord.component.session.Session;
+import com.brandongcobb.discord.component.session.SessionManager;
+import com.brandongcobb.discord.enums.LoopStop;
+import com.brandongcobb.discord.records.ContextWindow;
+import com.brandongcobb.discord.records.SessionKey;
+import com.brandongcobb.discord.records.ToolCall;
+import com.brandongcobb.discord.records.ToolOutcome;
+import com.brandongcobb.discord.registry.MetricsRegistry;
 import com.brandongcobb.discord.registry.ModelRegistry;
 import com.brandongcobb.discord.utils.handlers.MetadataUtils;
 import com.brandongcobb.discord.utils.handlers.OpenAIUtils;
+import com.brandongcobb.discord.utils.inc.Helpers;
 import com.brandongcobb.metadata.Metadata;
 import com.brandongcobb.metadata.MetadataContainer;
 import com.brandongcobb.metadata.MetadataKey;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.channel.middleman.GuildChannel;
 import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.memory.MessageWindowChatMemory;
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.ToolResponseMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.StringWriter;
-import java.io.Writer;
-import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 @Service
 public class DiscordService {
 
-    private AIService ais;
-    private JDA api;
-    private DiscordBot bot;
     private static final AtomicLong counter = new AtomicLong();
-    private volatile boolean firstRun = true;
-    private MetadataContainer lastAIResponseContainer = null;
-    private List<JsonNode> lastResults;
     private static final Logger LOGGER = Logger.getLogger(Application.class.getName());
-    private ObjectMapper mapper = new ObjectMapper();
-    private CustomMCPServer mcpServer;
     private MessageService mess;
     private ModelRegistry modelRegistry = new ModelRegistry();
-    private CompletableFuture<String> nextInputFuture = null;
-    private String originalDirective;
+    private RoutingService routingService;
     private ToolService toolService;
-    private static ChatMemory chatMemory = MessageWindowChatMemory.builder().build();
-    private final ExecutorService replExecutor = Executors.newFixedThreadPool(2);
-    private volatile boolean waitingForInput = false;
-    
+    private TokenService tokenService;
+    private final ContextService contextService;
+    private final CompactionService compactionService;
+    private final ChatMemory chatMemory;
+    private final IoExecutor ioExecutor;
+    private final int toolFanOut = Helpers.getEnvInt("DISCORD_TOOL_FANOUT", 4);
+    private final boolean speculateTools = Helpers.getEnvBoolean("DISCORD_TOOL_SPECULATE", true);
+    private final SessionManager sessionManager;
+    private final LoopScheduler loopScheduler;
+
     @Autowired
-    public DiscordService(CustomMCPServer server, MessageService mess, ToolService toolService) {
-        this.ais = new AIService(chatMemory, toolService);
+    public DiscordService(ChatMemory chatMemory, MessageService mess, ToolService toolService, RoutingService routingService, TokenService tokenService, ContextService contextService, CompactionService compactionService, IoExecutor ioExecutor, SessionManager sessionManager, LoopScheduler loopScheduler) {
+        this.chatMemory = chatMemory;
+        this.ioExecutor = ioExecutor;
+        this.sessionManager = sessionManager;
+        this.loopScheduler = loopScheduler;
+        this.routingService = routingService;
+        this.tokenService = tokenService;
+        this.contextService = contextService;
+        this.compactionService = compactionService;
         this.mess = mess;
         this.toolService = toolService;
-        this.mcpServer = server;
+        // Chat memory is durable; an idle session only gives up its in-process context.
+        sessionManager.onEvict(session -> contextService.clear(session.getConversationId()));
     }
 
     /*
      *  Helper
      */
-    private void addToolOutput(String content, ChatMemory chatMemory, long senderId) {
+    private void addToolOutput(String content, Session session) {
         String uuid = String.valueOf(counter.getAndIncrement());
         ToolResponseMessage.ToolResponse response = new ToolResponseMessage.ToolResponse(uuid, "tool", content);
         ToolResponseMessage toolMsg = new ToolResponseMessage(List.of(response));
         ToolResponseMessage.ToolResponse otherResponse = new ToolResponseMessage.ToolResponse(uuid, "tool", content.length() <= 500 ? content : content.substring(0, 500));
         ToolResponseMessage otherToolMsg = new ToolResponseMessage(List.of(response));
-        chatMemory.add(String.valueOf(senderId), toolMsg);
-        chatMemory.add(String.valueOf(senderId), otherToolMsg);
+        remember(session, toolMsg);
+        remember(session, otherToolMsg);
+    }
+    
+    private void remember(Session session, org.springframework.ai.chat.messages.Message message) {
+        // Stored under the context's lock, so a compaction swap never sees a message in one place but not the other.
+        contextService.append(session.getConversationId(), System.getenv("DISCORD_MODEL"), message,
+            () -> chatMemory.add(session.getConversationId(), message));
+        compactionService.maybeCompact(session.getConversationId(), System.getenv("DISCORD_MODEL"));
     }
     /*
-     *  Helper
+     *  A session that starts after a restart or an eviction picks up where the stored conversation left off,
+     *  starting from the stored compaction summary when there is one.
      */
-    public String buildContext(long senderId) {
-        List<org.springframework.ai.chat.messages.Message> messages = chatMemory.get(String.valueOf(senderId));
-        if (messages.isEmpty()) {
-            return "No conversation context available.";
+    private void restore(Session session) {
+        String conversationId = session.getConversationId();
+        if (!session.isFirstRun() || contextService.getTokens(conversationId) > 0) return;
+        List<org.springframework.ai.chat.messages.Message> stored = chatMemory.get(conversationId);
+        for (org.springframework.ai.chat.messages.Message message : stored) {
+            contextService.append(conversationId, System.getenv("DISCORD_MODEL"), message);
         }
-        return messages.stream()
-            .map(msg -> {
-                if (msg instanceof ToolResponseMessage toolMsg) {
-                    var responses = toolMsg.getResponses();
-                    if (!responses.isEmpty()) {
-                        return msg.getMessageType() + ": " + responses.get(0).responseData();
-                    } else {
-                        return msg.getMessageType() + ": [no tool response data]";
-                    }
-                } else {
-                    String text = msg.getText();
-                    return msg.getMessageType() + ": " + (text != null ? text : "[no text]");
-                }
-            })
-            .collect(Collectors.joining("\n"));
+        if (!stored.isEmpty()) session.setFirstRun(false);
+    }
+    /*
+     *  Helper
+     */
+    public String buildContext(String conversationId) {
+        return contextService.getRendered(conversationId);
     }
     /*
      *  E-Step
      */
-    private CompletableFuture<Void> completeESubStep(JsonNode toolCallNode, long senderId) {
+    private CompletableFuture<ToolOutcome> completeESubStep(ToolCall toolCall) {
         LOGGER.finer("Starting E-substep for tool calls...");
-        return CompletableFuture.runAsync(() -> {
-            String toolName = toolCallNode.get("tool").asText();
-            try {
-                JsonNode argsNode = toolCallNode.get("arguments");
-                if (toolName == null || toolName.isBlank() || argsNode == null || argsNode.isEmpty()) {
-                    LOGGER.finer("Skipping tool call with missing or empty name/arguments.");
-                    return;
-                }
-                ObjectNode rpcRequest = mapper.createObjectNode();
-                rpcRequest.put("jsonrpc", "2.0");
-                rpcRequest.put("method", "tools/call");
-                ObjectNode params = rpcRequest.putObject("params");
-                params.put("name", toolName);
-                params.set("arguments", argsNode);
-                String rpcText = rpcRequest.toString();
-                LOGGER.finer("[JSON-RPC →] " + rpcText);
-                StringWriter buffer = new StringWriter();
-                CountDownLatch latch = new CountDownLatch(1);
-                PrintWriter out = new PrintWriter(new Writer() {
-                    @Override public void write(char[] cbuf, int off, int len)  {
-                        buffer.write(cbuf, off, len);
-                    }
-                    @Override public void flush() {
-                        latch.countDown();
-                    }
-                    @Override public void close() {}
-                }, true);
-                String responseStr = mcpServer.handleRequest(rpcText).join();
-                LOGGER.finer("[JSON-RPC ←] " + responseStr);
-                if (responseStr.isEmpty()) {
-                    String emptyMsg = "TOOL: [" + toolName + "] Error: Empty tool response";
-                    LOGGER.severe(emptyMsg);
-                    addToolOutput(emptyMsg, chatMemory, senderId);
-                    return;
-                }
-                JsonNode root = mapper.readTree(responseStr);
-                JsonNode result = root.path("result");
-                String message = result.path("message").asText("No message");
-                String toolCall = result.path("toolCall").asText("No tool call");
-                chatMemory.add(String.valueOf(senderId), new AssistantMessage(toolCall));
-                boolean success = result.path("success").asBoolean(false);
-                if (success) {
-                    addToolOutput("[" + toolName + "] " + message, chatMemory, senderId);
+        String toolName = toolCall.name();
+        String callId = toolCall.id() != null ? toolCall.id() : String.valueOf(counter.getAndIncrement());
+        JsonNode argsNode = toolCall.arguments();
+        if (toolName == null || toolName.isBlank() || argsNode == null || argsNode.isEmpty()) {
+            LOGGER.finer("Skipping tool call with missing or empty name/arguments.");
+            return CompletableFuture.completedFuture(null);
+        }
+        LOGGER.finer("[" + toolName + " →] " + argsNode);
+        return toolService.dispatch(toolName, argsNode)
+            .thenApply(status -> {
+                String message = status.getMessage() != null ? status.getMessage() : "No message";
+                String toolCallText = status.getToolCall() != null ? status.getToolCall() : "No tool call";
+                if (status.isSuccess()) {
                     LOGGER.finer("[" + toolName + "] succeeded: " + message);
-                } else {
-                    addToolOutput("TOOL: [" + toolName + "] Error: " + message, chatMemory, senderId);
-                    LOGGER.severe(toolName + " failed: " + message);
+                    return new ToolOutcome(toolCallText, new ToolResponseMessage.ToolResponse(callId, toolName, "[" + toolName + "] " + message));
                 }
-            } catch (Exception e) {
-                String err = "TOOL: [" + toolName + "] Error: Exception executing tool: " + e.getMessage();
+                LOGGER.severe(toolName + " failed: " + message);
+                return new ToolOutcome(toolCallText, new ToolResponseMessage.ToolResponse(callId, toolName, "TOOL: [" + toolName + "] Error: " + message));
+            })
+            .exceptionally(ex -> {
+                String err = "TOOL: [" + toolName + "] Error: Exception executing tool: " + ex.getMessage();
                 LOGGER.severe(err);
-                addToolOutput(err, chatMemory, senderId);
+                return new ToolOutcome(null, new ToolResponseMessage.ToolResponse(callId, toolName, err));
+            });
+    }
+
+    /*
+     *  Runs of consecutive read-only calls fan out up to DISCORD_TOOL_FANOUT at a time; a mutating call runs alone,
+     *  so side effects still happen in the order the model asked for them. Outcomes keep that order too.
+     */
+    private CompletableFuture<List<ToolOutcome>> completeRunToolCalls(Session session, List<ToolCall> calls) {
+        ToolOutcome[] outcomes = new ToolOutcome[calls.size()];
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        int index = 0;
+        while (index < calls.size()) {
+            int start = index;
+            if (toolService.isReadOnly(calls.get(index).name())) {
+                while (index < calls.size() && toolService.isReadOnly(calls.get(index).name())) index++;
+            } else {
+                index++;
             }
-        }).exceptionally(ex -> {
-            LOGGER.severe("completeESubStep (exec) failed: " + ex.getMessage());
-            return null;
+            int end = index;
+            chain = chain.thenCompose(v -> {
+                AtomicInteger next = new AtomicInteger(start);
+                int lanes = Math.min(Math.max(1, toolFanOut), end - start);
+                CompletableFuture<?>[] running = new CompletableFuture<?>[lanes];
+                for (int lane = 0; lane < lanes; lane++) {
+                    running[lane] = completeToolLane(session, calls, end, next, outcomes);
+                }
+                return CompletableFuture.allOf(running);
+            });
+        }
+        return chain.thenApply(v -> {
+            List<ToolOutcome> ordered = new ArrayList<>();
+            for (ToolOutcome outcome : outcomes) {
+                if (outcome != null) ordered.add(outcome);
+            }
+            return ordered;
         });
     }
 
-    private CompletableFuture<Void> completeESubStep(boolean firstRun) {
-        LOGGER.finer("Starting E-substep for first run...");
-        if (!firstRun) return CompletableFuture.completedFuture(null);
-        return CompletableFuture.runAsync(() -> {
-            try {
-                ObjectNode initRequest = mapper.createObjectNode();
-                initRequest.put("jsonrpc", "2.0");
-                initRequest.put("method", "initialize");
-                initRequest.set("params", mapper.createObjectNode());
-                initRequest.put("id", "init-001");
-                String responseStr = mcpServer.handleRequest(initRequest.toString()).join();
-                if (responseStr.isEmpty()) throw new IOException("Empty initialization response");
-                JsonNode responseJson = mapper.readTree(responseStr);
-                LOGGER.finer("Initialization completed: " + responseJson.toString());
-            } catch (Exception e) {
-                LOGGER.severe("Initialization error: " + e.getMessage());
-            }
-        }).exceptionally(ex -> {
-            LOGGER.severe("completeESubStep (init) failed: " + ex.getMessage());
-            return null;
+    private CompletableFuture<Void> completeToolLane(Session session, List<ToolCall> calls, int end, AtomicInteger next, ToolOutcome[] outcomes) {
+        int index = next.getAndIncrement();
+        if (index >= end) return CompletableFuture.completedFuture(null);
+        ToolCall toolCall = calls.get(index);
+        CompletableFuture<ToolOutcome> started = session.getSpeculative().remove(speculationKey(toolCall));
+        if (started != null) MetricsRegistry.increment("tools.speculative.used");
+        return (started != null ? started : completeESubStep(toolCall)).thenCompose(outcome -> {
+            outcomes[index] = outcome;
+            return completeToolLane(session, calls, end, next, outcomes);
         });
     }
-    
-    private CompletableFuture<Void> completeEStep(MetadataContainer response, boolean firstRun, GuildChannel channel, long senderId) {
+
+    /*
+     *  One assistant turn naming the calls, then one tool message carrying every result of the turn.
+     */
+    private void rememberToolOutcomes(Session session, List<ToolOutcome> outcomes) {
+        if (outcomes.isEmpty()) return;
+        String toolCalls = outcomes.stream()
+            .map(ToolOutcome::toolCall)
+            .filter(text -> text != null)
+            .collect(Collectors.joining("\n"));
+        if (!toolCalls.isEmpty()) {
+            remember(session, new AssistantMessage(toolCalls));
+        }
+        remember(session, new ToolResponseMessage(outcomes.stream().map(ToolOutcome::response).toList()));
+    }
+
+    /*
+     *  Starts a read-only tool as soon as the stream closes its arguments, overlapping tool latency with generation.
+     *  Once a mutating call shows up nothing later in the turn is started early, since it may read what that call changes.
+     *  The E-step picks the running future up by call id; speculations the final turn does not contain are dropped unused.
+     */
+    private void speculate(Session session, ToolCall toolCall) {
+        if (!speculateTools || session.isSpeculationBlocked()) return;
+        if (!toolService.isReadOnly(toolCall.name())) {
+            session.setSpeculationBlocked(true);
+            return;
+        }
+        session.getSpeculative().computeIfAbsent(speculationKey(toolCall), key -> {
+            MetricsRegistry.increment("tools.speculative.started");
+            return completeESubStep(toolCall);
+        });
+    }
+
+    private static String speculationKey(ToolCall toolCall) {
+        return toolCall.id() != null ? toolCall.id() : toolCall.name() + toolCall.arguments();
+    }
+
+    private CompletableFuture<Void> completeEStep(Session session, MetadataContainer response) {
         LOGGER.fine("Starting E-step...");
 //        if (System.getenv("DISCORD_PROVIDER").equals("google")) {
 //            try {
@@ -221,24 +254,20 @@ public class DiscordService {
 //                e.printStackTrace();
 //            }
 //        }
-        return new MetadataUtils(response).completeGetContent().thenCompose(contentStr -> {
-            String finishReason = new OpenAIUtils(response).completeGetFinishReason().join();
+        return new OpenAIUtils(response).completeGetFinishReason().thenCompose(finishReason -> {
             if (finishReason != null) {
-                if (lastResults != null && !lastResults.isEmpty() && !finishReason.contains("MALFORMED_FUNCTION_CALL")) {
-                    List<CompletableFuture<Void>> futures = new ArrayList<>();
-                    return completeESubStep(firstRun).thenCompose(v -> {
-                        for (JsonNode toolCallNode : lastResults) {
-                            futures.add(completeESubStep(toolCallNode, senderId));
-                        }
-                        lastResults = null;
-                        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
-                    }).exceptionally(ex -> {
-                        LOGGER.severe("One or more tool executions failed: " + ex.getMessage());
-                        return null;
-                    });
+                List<ToolCall> calls = session.getPendingToolCalls();
+                if (calls != null && !calls.isEmpty() && !finishReason.contains("MALFORMED_FUNCTION_CALL")) {
+                    session.setPendingToolCalls(null);
+                    return completeRunToolCalls(session, calls)
+                        .thenAccept(outcomes -> rememberToolOutcomes(session, outcomes))
+                        .exceptionally(ex -> {
+                            LOGGER.severe("One or more tool executions failed: " + ex.getMessage());
+                            return null;
+                        });
                 } else {
                     LOGGER.finer("No tools to run, falling back to user input.");
-                    return null;
+                    return CompletableFuture.<Void>completedFuture(null);
                 }
             }
             return CompletableFuture.completedFuture(null);
@@ -251,34 +280,74 @@ public class DiscordService {
     /*
      * P-Step
      */
-    private CompletableFuture<Void> completePStep(GuildChannel channel, long senderId) {
+    private CompletableFuture<Void> completePStep(Session session) {
         LOGGER.fine("Starting P-step");
-        printIt(channel, senderId);
-        return CompletableFuture.completedFuture(null);
+        List<org.springframework.ai.chat.messages.Message> messages = chatMemory.get(session.getConversationId());
+        if (session.isReplyStreamed() && !messages.isEmpty() && messages.get(messages.size() - 1) instanceof AssistantMessage) {
+            // The reply was already rendered live by the stream; only tool output still needs printing.
+            return CompletableFuture.completedFuture(null);
+        }
+        return printIt(session);
     }
     /*
      *  R-Step
      */
-    private CompletableFuture<MetadataContainer> completeRStepWithTimeout(boolean firstRun, GuildChannel channel, Long senderId) {
+    private CompletableFuture<MetadataContainer> completeRStepWithTimeout(Session session, AgentLoop loop, boolean firstRun) {
         final int maxRetries = 2;
-        final long timeout = 3600_000;
+        final long timeoutMillis = 3_600_000L;
         CompletableFuture<MetadataContainer> result = new CompletableFuture<>();
         Runnable attempt = new Runnable() {
             int retries = 0;
             @Override
             public void run() {
                 retries++;
-                completeRStep(firstRun, channel, senderId)
-                    .orTimeout(timeout, TimeUnit.SECONDS)
+                // No attempt outlives the loop's deadline; the scheduler stops the loop as DEADLINE when it fails.
+                long remaining = loop.getRemainingMillis();
+                if (remaining <= 0) {
+                    result.completeExceptionally(new TimeoutException("Loop deadline passed before R-step attempt " + retries));
+                    return;
+                }
+                completeRStep(session, loop, firstRun)
+                    .orTimeout(Math.min(timeoutMillis, remaining), TimeUnit.MILLISECONDS)
                     .whenComplete((resp, err) -> {
+                        if (err instanceof CancellationException || err != null && err.getCause() instanceof CancellationException) {
+                            // The loop was cancelled; a retry would only re-send what the user stopped.
+                            result.completeExceptionally(err);
+                            return;
+                        }
+                        if (err instanceof TimeoutException || err != null && err.getCause() instanceof TimeoutException) {
+                            // orTimeout only gives up on the result; abort the request itself before anything else.
+                            loop.cancelStep();
+                            if (loop.getRemainingMillis() <= 0) {
+                                LOGGER.warning("R-step for " + session.getConversationId() + " ran into the loop deadline");
+                                result.completeExceptionally(err);
+                                return;
+                            }
+                        }
+                        ProviderHttpException providerError = err != null ? ProviderHttpException.find(err) : null;
+                        if (providerError != null && providerError.isRetryable()) {
+                            // Throttling and outages say nothing about the context, so keep it and wait out Retry-After.
+                            if (retries < maxRetries) {
+                                long delay = Math.max(providerError.getRetryAfterMillis(), 1000L * retries);
+                                LOGGER.warning(providerError.getProvider() + " returned " + providerError.getStatusCode() + ", retrying in " + delay + "ms");
+                                CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, ioExecutor).execute(this);
+                            } else {
+                                LOGGER.severe("completeRStepWithTimeoutfailed: " + retries + " attempts.");
+                                result.completeExceptionally(err);
+                            }
+                            return;
+                        }
+                        if (providerError != null && providerError.getStatusCode() != 400 && providerError.getStatusCode() != 413) {
+                            // Auth, routing and validation errors fail the same way on every retry.
+                            LOGGER.severe("completeRStepWithTimeoutfailed: " + providerError.getMessage());
+                            result.completeExceptionally(err);
+                            return;
+                        }
                         if (err != null || resp == null) {
-                            LOGGER.finer(err.toString());
-                            chatMemory.clear(String.valueOf(senderId));
-                            addToolOutput("The previous output was greater than the token limit (32768 tokens) or errored and as a result the request failed. The context has been removed.", chatMemory, senderId);
+                            LOGGER.finer(String.valueOf(err));
                             boolean shouldRetry = false;
                             if (resp != null) {
-                                String content = resp.get(new MetadataKey<>("response", Metadata.STRING));
-                                String finishReason = new OpenAIUtils(resp).completeGetFinishReason().join();
+                                String finishReason = resp.get(new MetadataKey<>("finish_reason", Metadata.STRING));
                                 if (finishReason != null) {
                                     if (finishReason.contains("MALFORMED_FUNCTION_CALL")) {
                                         LOGGER.warning("Detected MALFORMED_FUNCTION_CALL, retrying...");
@@ -288,7 +357,14 @@ public class DiscordService {
                             }
                             if (retries < maxRetries) {
                                 retries++;
-                                replExecutor.submit(this);
+                                // Shrink the history rather than wipe it: summarize the older turns, or drop them if that fails.
+                                compactionService.completeReclaim(session.getConversationId(), System.getenv("DISCORD_MODEL"))
+                                    .whenComplete((dropped, error) -> {
+                                        if (dropped != null && dropped > 0) {
+                                            addToolOutput("The previous request failed, likely because the context was too long. The " + dropped + " oldest message(s) were removed.", session);
+                                        }
+                                        ioExecutor.execute(this);
+                                    });
                             } else {
                                 LOGGER.severe("completeRStepWithTimeoutfailed: " + retries + " attempts.");
                                 result.completeExceptionally(err != null ? err : new IllegalStateException("completeRStepWithTimeoutfailed: " + retries + " attempts."));
@@ -299,84 +375,81 @@ public class DiscordService {
                     });
             }
         };
-        replExecutor.submit(attempt);
+        ioExecutor.execute(attempt);
         return result;
     }
     
-    private CompletableFuture<MetadataContainer> completeRStep(boolean firstRun, GuildChannel channel, long senderId) {
+    private CompletableFuture<MetadataContainer> completeRStep(Session session, AgentLoop loop, boolean firstRun) {
         LOGGER.fine("Starting R-step, firstRun=" + firstRun);
-        String prompt = firstRun ? originalDirective : buildContext(senderId);
         String model = System.getenv("DISCORD_MODEL");
-        String provider = System.getenv("DISCORD_PROVIDER");
         String requestType = System.getenv("DISCORD_REQUEST_TYPE");
-        CompletableFuture<String> endpointFuture = modelRegistry.completeGetAIEndpoint(false, provider, "discord", requestType);
-        CompletableFuture<String> instructionsFuture = modelRegistry.completeGetInstructions(false, provider, "discord");
-        return endpointFuture.thenCombine(instructionsFuture, AbstractMap.SimpleEntry::new).thenCompose(pair -> {
-            String endpoint = pair.getKey();
-            String instructions = pair.getValue();
-            String prevId = null;
-            if (!firstRun) {
-                MetadataKey<String> previousResponseIdKey = new MetadataKey<>("id", Metadata.STRING);
-                prevId = (String) lastAIResponseContainer.get(previousResponseIdKey);
-            }
-            try {
-                return ais.completeRequest(instructions, prompt, prevId, model, requestType, endpoint,
-                        Boolean.parseBoolean(System.getenv("DISCORD_STREAM")), null, provider)
-                    .thenApply(resp -> {
-                        if (resp == null) {
-                            throw new CompletionException(new IllegalStateException("AI returned null"));
-                        }
-                        lastAIResponseContainer = resp;
-                        OpenAIUtils utils = new OpenAIUtils(resp);
-                        String finishReason = utils.completeGetFinishReason().join();
-                        String content = utils.completeGetContent().join();
-                        this.lastResults = new ArrayList<>();
-                        String toolName = utils.completeGetFunctionName().join();
-                        Map<String, Object> toolArgs = utils.completeGetArguments().join();
-                        if (content == null && content.isBlank() && toolName == null && toolArgs == null) {
-                            LOGGER.warning("No content in model response.");
-                        } else {
-                            if (toolName != null && toolArgs != null) {
-                                ObjectNode toolCallNode = mapper.createObjectNode();
-                                toolCallNode.put("tool", toolName);
-                                toolCallNode.set("arguments", mapper.valueToTree(toolArgs));
-                                lastResults.add(toolCallNode);
-                            } else {
-                                Pattern jsonBlock = Pattern.compile("```json\\s*([\\s\\S]*?)\\s*```", Pattern.DOTALL);
-                                Matcher matcher = jsonBlock.matcher(content);
-                                while (matcher.find()) {
-                                    String jsonText = matcher.group(1).trim();
-                                    try {
-                                        JsonNode toolCallNode = mapper.readTree(jsonText);
-                                        if (toolCallNode.has("tool") && toolCallNode.has("arguments")) {
-                                            lastResults.add(toolCallNode);
-                                        }
-                                    } catch (Exception e) {
-                                        LOGGER.severe("Failed to parse inline tool JSON: " + e.getMessage());
-                                    }
-                                }
-                                if (lastResults.isEmpty()) {
-                                    chatMemory.add(String.valueOf(senderId), new AssistantMessage(content));
-                                }
-                            }
-                        }
+        String conversationId = session.getConversationId();
+        // Later turns replay memory message by message so the request prefix stays stable for provider prompt caching.
+        String prompt = firstRun ? session.getOriginalDirective() : null;
+        // The window is already trimmed to the model's budget and counted, so nothing here walks the history.
+        ContextWindow window = firstRun ? ContextWindow.EMPTY : contextService.getWindow(conversationId);
+        List<org.springframework.ai.chat.messages.Message> history = window.messages();
+        long promptTokens = firstRun
+            ? tokenService.countTokens(model, prompt)
+            : window.tokens();
+        String prevId = null;
+        if (!firstRun && session.getLastResponse() != null) {
+            MetadataKey<String> previousResponseIdKey = new MetadataKey<>("id", Metadata.STRING);
+            prevId = (String) session.getLastResponse().get(previousResponseIdKey);
+        }
+        boolean stream = Boolean.parseBoolean(System.getenv("DISCORD_STREAM"));
+        session.setReplyStreamed(stream);
+        session.getSpeculative().clear();
+        session.setSpeculationBlocked(false);
+        CompletableFuture<MetadataContainer> response = stream
+            ? mess.completeStreamResponse(session.getChannel(), routingService.streamRequest(prompt, history, prevId, requestType, promptTokens)
+                .doOnNext(delta -> {
+                    if (delta.isToolCall()) speculate(session, delta.toolCall());
+                }))
+            : routingService.completeRequest(prompt, history, prevId, requestType, false, null, promptTokens);
+        loop.setStep(response);
+        return response
+            .thenCompose(resp -> {
+                if (resp == null) {
+                    throw new CompletionException(new IllegalStateException("AI returned null"));
+                }
+                session.setLastResponse(resp);
+                OpenAIUtils utils = new OpenAIUtils(resp);
+                CompletableFuture<String> finishReasonFuture = utils.completeGetFinishReason();
+                CompletableFuture<String> contentFuture = utils.completeGetContent();
+                CompletableFuture<List<ToolCall>> toolCallsFuture = new MetadataUtils(resp).completeGetToolCalls();
+                return CompletableFuture.allOf(finishReasonFuture, contentFuture, toolCallsFuture)
+                    .thenApply(v -> toStepResult(session, loop, model, promptTokens, finishReasonFuture.join(), contentFuture.join(), toolCallsFuture.join()));
+            });
+    }
 
-                        MetadataContainer metadata = new MetadataContainer();
-                        metadata.put(new MetadataKey<>("finish_reason", Metadata.STRING), finishReason);
-                        return metadata;
-                    });
-            } catch (Exception e) {
-                e.printStackTrace();
-                return CompletableFuture.completedFuture(new MetadataContainer());
+    /*
+     *  Only called once its inputs have completed, so the joins above never block.
+     */
+    private MetadataContainer toStepResult(Session session, AgentLoop loop, String model, long promptTokens, String finishReason, String content, List<ToolCall> calls) {
+        // The loop this step belongs to, which is no longer session.getLoop() once a new turn superseded it.
+        loop.addTokens(promptTokens + (content == null ? 0 : tokenService.countTokens(model, content)));
+        // Native tool_calls and structured-output envelopes were already decoded into ToolCall records by the adapter.
+        List<ToolCall> toolCalls = new ArrayList<>(calls);
+        session.setPendingToolCalls(toolCalls);
+        if (toolCalls.isEmpty()) {
+            if (content == null || content.isBlank()) {
+                LOGGER.warning("No content in model response.");
+            } else {
+                remember(session, new AssistantMessage(content));
             }
-        });
+        }
+
+        MetadataContainer metadata = new MetadataContainer();
+        metadata.put(new MetadataKey<>("finish_reason", Metadata.STRING), finishReason);
+        return metadata;
     }
     
     /*
      *  Helper
      */
-    public void printIt(GuildChannel channel, long senderId) {
-        List<org.springframework.ai.chat.messages.Message> messages = chatMemory.get(String.valueOf(senderId));
+    public CompletableFuture<Void> printIt(Session session) {
+        List<org.springframework.ai.chat.messages.Message> messages = chatMemory.get(session.getConversationId());
         org.springframework.ai.chat.messages.Message lastMessage = messages.get(messages.size() - 1);
         String content  = "";
         if (lastMessage instanceof UserMessage userMsg) {
@@ -388,52 +461,77 @@ public class DiscordService {
         } else if (lastMessage instanceof ToolResponseMessage toolResponseMsg) {
             var responses = toolResponseMsg.getResponses();
             if (!responses.isEmpty()) {
-                content = responses.get(0).responseData();
+                content = responses.stream()
+                    .map(ToolResponseMessage.ToolResponse::responseData)
+                    .collect(Collectors.joining("\n"));
             }
         }
-        if (content != null) {
-            mess.completeSendResponse(channel, content).join();
+        if (content == null) {
+            return CompletableFuture.completedFuture(null);
         }
+        return mess.completeSendResponse(session.getChannel(), content);
     }
     
-    private CompletableFuture<Void> completeLStep(long senderId, GuildChannel channel) {
-        firstRun = false;
+    /*
+     *  L-Step
+     *  One R-E-P pass; true when the model asked for tools and wants to see their results.
+     */
+    private CompletableFuture<Boolean> completeIteration(Session session, AgentLoop loop) {
+        boolean firstRun = session.isFirstRun();
         LOGGER.fine("Starting L-step...");
-        return completeRStepWithTimeout(false, channel, senderId)
-            .thenCompose(resp ->
-                completeEStep(resp, false, channel, senderId)
-                    .thenCompose(eDone ->
-                        completePStep(channel, senderId)
-                            .thenCompose(pDone ->
-                                completeLStep(senderId, channel)
-                            )
-                    )
-            );
+        return completeRStepWithTimeout(session, loop, firstRun)
+            .thenCompose(resp -> {
+                List<ToolCall> calls = session.getPendingToolCalls();
+                boolean more = calls != null && !calls.isEmpty();
+                return completeEStep(session, resp)
+                    .thenCompose(eDone -> completePStep(session))
+                    .thenApply(pDone -> {
+                        session.setFirstRun(false);
+                        return more;
+                    });
+            });
+    }
+
+    private CompletableFuture<Void> completeTurn(Session session, String userInput) {
+        GuildChannel channel = session.getChannel();
+        String directive = "Guild ID:" + channel.getGuild() + "Channel ID: " + channel.getId() + userInput;
+        session.setOriginalDirective(directive);
+        restore(session);
+        // History is replayed role by role now, so the user's turn has to be stored as one.
+        remember(session, new UserMessage(directive));
+        return CompletableFuture.completedFuture(null);
     }
-    
 
     /*
      * Full-REPL
      */
     public CompletableFuture<Void> startLoop(String userInput, long senderId, GuildChannel channel) {
         if (senderId != Long.valueOf(System.getenv("DISCORD_OWNER_ID"))) { return null; }
-        mess.completeSendDiscordMessage(channel, "Thinking...").join();
+        CompletableFuture<?> thinking = mess.completeSendDiscordMessage(channel, "Thinking...");
         if (userInput == null || userInput.isBlank()) {
-            return CompletableFuture.completedFuture(null);
+            return thinking.thenAccept(sent -> {});
         }
-        originalDirective = "Guild ID:" + channel.getGuild() + "Channel ID: " + channel.getId() + userInput;
-        chatMemory.add(String.valueOf(senderId), new AssistantMessage("Guild ID:" + channel.getGuild() + "Channel ID: " + channel.getId() + userInput));
-        userInput = null;
-        return completeRStepWithTimeout(firstRun, channel, senderId)
-            .thenCompose(resp ->
-                completeEStep(resp, firstRun, channel, senderId)
-                    .thenCompose(eDone ->
-                        completePStep(channel, senderId)
-                            .thenCompose(pDone ->
-                                completeLStep(senderId, channel)
-                            )
-                    )
-            );
+        Session session = sessionManager.getSession(sessionKey(senderId, channel));
+        session.setChannel(channel);
+        // The first mailbox message waits for "Thinking..." so it always lands before the reply.
+        return loopScheduler.start(session, loop -> thinking.thenCompose(sent -> completeTurn(session, userInput)), loop -> completeIteration(session, loop))
+            .thenAccept(reason -> {
+                if (reason != LoopStop.DONE && reason != LoopStop.SUPERSEDED) {
+                    mess.completeSendDiscordMessage(channel, "Stopped: " + reason.metricName.replace('_', ' ') + ".");
+                }
+            });
+    }
+
+    /*
+     *  Cancels the sender's running loop in this channel, aborting the provider request in flight.
+     */
+    public boolean cancelLoop(long senderId, GuildChannel channel) {
+        Session session = sessionManager.findSession(sessionKey(senderId, channel));
+        return session != null && loopScheduler.cancel(session);
+    }
+
+    private static SessionKey sessionKey(long senderId, GuildChannel channel) {
+        return new SessionKey(channel.getGuild().getIdLong(), channel.getIdLong(), senderId);
     }
 
 }
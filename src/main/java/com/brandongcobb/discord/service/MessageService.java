@@ -19,6 +19,11 @@
 package com.brandongcobb.discord.service;
 
 import com.brandongcobb.discord.component.bot.DiscordBot;
+import com.brandongcobb.discord.component.executor.IoExecutor;
+import com.brandongcobb.discord.component.stream.FenceAccumulator;
+import com.brandongcobb.discord.records.Delta;
+import com.brandongcobb.discord.utils.inc.Helpers;
+import com.brandongcobb.metadata.MetadataContainer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.Guild;
@@ -31,8 +36,12 @@ import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
 import net.dv8tion.jda.api.entities.channel.concrete.VoiceChannel;
 import net.dv8tion.jda.api.entities.channel.middleman.GuildChannel;
 import net.dv8tion.jda.api.utils.FileUpload;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.io.File;
 import java.io.IOException;
@@ -41,14 +50,12 @@ import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
-import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -60,7 +67,13 @@ public class MessageService {
     private File tempDirectory;
     private JDA api;
     
-    public MessageService() {
+    private final IoExecutor ioExecutor;
+    private static final int STREAM_PAGE_SIZE = 1900;
+    private final long streamEditMillis = Helpers.getEnvInt("DISCORD_STREAM_EDIT_MS", 1500);
+    
+    @Autowired
+    public MessageService(IoExecutor ioExecutor) {
+        this.ioExecutor = ioExecutor;
         this.tempDirectory = new File(System.getProperty("java.io.tmpdir"));
     }
     
@@ -123,7 +136,7 @@ public class MessageService {
                     e.printStackTrace();
                     results.add("Failed to process: " + attachment.getFileName());
                 }
-            });
+            }, ioExecutor);
 
             futures.add(future);
         }
@@ -167,7 +180,7 @@ public class MessageService {
                     e.printStackTrace();
                     results.add("Failed to process: " + attachment.getFileName());
                 }
-            });
+            }, ioExecutor);
             futures.add(future);
         }
         return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
@@ -341,54 +354,65 @@ public class MessageService {
         return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
     }
     
-    public CompletableFuture<Void> completeStreamResponse(Message originalMessage, Supplier<Optional<String>> nextChunkSupplier) {
-        AtomicReference<Message> editingMessage = new AtomicReference<>(originalMessage);
-        StringBuilder buffer = new StringBuilder();
-        StringBuilder fullContent = new StringBuilder();
-        long[] lastFlushTime = {System.currentTimeMillis()};
-        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
-        CompletableFuture<Void> done = new CompletableFuture<>();
-        Runnable task = () -> {
-            Optional<String> nextChunkOpt = nextChunkSupplier.get();
-            if (nextChunkOpt.isEmpty()) {
-                return;
-            }
-            String chunk = nextChunkOpt.get();
-            if (chunk.equals("<<END>>")) {
-                flushBuffer(fullContent, editingMessage)
-                    .thenRun(() -> {
-                        scheduler.shutdown();
-                        done.complete(null);
-                    });
-                return;
-            }
-            buffer.append(chunk);
-            fullContent.append(chunk);
-            String current = fullContent.toString();
-            boolean insideIncompleteCodeBlock = isInsideIncompleteCodeBlock(current);
-            boolean readyToFlush = !insideIncompleteCodeBlock && (buffer.length() > 1900 || System.currentTimeMillis() - lastFlushTime[0] > 10_000);
-            if (readyToFlush) {
-                flushBuffer(fullContent, editingMessage).thenAccept(newMsg -> {
-                    editingMessage.set(newMsg);
-                    lastFlushTime[0] = System.currentTimeMillis();
-                });
-            } else if (insideIncompleteCodeBlock) {
-                int lastCodeBlockStart = lastIncompleteCodeBlockStartIndex(buffer.toString());
-                if (lastCodeBlockStart > 0) {
-                    String toFlush = buffer.substring(0, lastCodeBlockStart);
-                    buffer.delete(0, lastCodeBlockStart);
-                    if (!toFlush.isBlank()) {
-                        flushBuffer(new StringBuilder(toFlush), editingMessage).thenAccept(newMsg -> {
-                            editingMessage.set(newMsg);
-                            lastFlushTime[0] = System.currentTimeMillis();
-                        });
-                    }
+    /*
+     *  Renders a delta stream into one or more Discord messages. Deltas accumulate as they arrive;
+     *  the current pages are sampled every DISCORD_STREAM_EDIT_MS and at most one edit is in flight,
+     *  so intermediate snapshots are dropped instead of queued. Cancelling the returned future
+     *  cancels the subscription and with it the upstream request.
+     */
+    public CompletableFuture<MetadataContainer> completeStreamResponse(GuildChannel channel, Flux<Delta> deltas) {
+        FenceAccumulator accumulator = new FenceAccumulator(STREAM_PAGE_SIZE);
+        List<Message> messages = new ArrayList<>();
+        List<String> shown = new ArrayList<>();
+        AtomicReference<MetadataContainer> completion = new AtomicReference<>();
+        CompletableFuture<MetadataContainer> done = new CompletableFuture<>();
+        Disposable subscription = deltas
+            .doOnNext(delta -> {
+                if (delta.isDone()) {
+                    completion.set(delta.completion());
+                } else {
+                    accumulator.append(delta.content());
                 }
-            }
-        };
-        scheduler.scheduleAtFixedRate(task, 0, 2, TimeUnit.SECONDS);
+            })
+            .sample(Duration.ofMillis(streamEditMillis))
+            .onBackpressureLatest()
+            .concatMap(tick -> Mono.fromFuture(() -> completeRenderPages(channel, accumulator.pages(), messages, shown)), 1)
+            .then(Mono.defer(() -> Mono.fromFuture(() -> completeRenderPages(channel, accumulator.pages(), messages, shown))))
+            .subscribe(
+                ignored -> {},
+                done::completeExceptionally,
+                () -> done.complete(completion.get())
+            );
+        done.whenComplete((container, error) -> {
+            if (done.isCancelled()) subscription.dispose();
+        });
         return done;
     }
+
+    private CompletableFuture<Void> completeRenderPages(GuildChannel channel, List<String> pages, List<Message> messages, List<String> shown) {
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        for (int i = 0; i < pages.size(); i++) {
+            int index = i;
+            String page = pages.get(i);
+            if (page.isBlank()) break;
+            if (index < shown.size() && shown.get(index).equals(page)) continue;
+            chain = chain.thenCompose(v -> {
+                CompletableFuture<Message> sent = index < messages.size()
+                    ? completeEditDiscordMessage(messages.get(index), page)
+                    : completeSendDiscordMessage(channel, page);
+                return sent.thenAccept(message -> {
+                    if (index < messages.size()) {
+                        messages.set(index, message);
+                        shown.set(index, page);
+                    } else {
+                        messages.add(message);
+                        shown.add(page);
+                    }
+                });
+            });
+        }
+        return chain;
+    }
     
     /*
      *  Helper methods
@@ -401,21 +425,6 @@ public class MessageService {
         return Base64.getEncoder().encodeToString(imageBytes);
     }
 
-    private CompletableFuture<Message> flushBuffer(StringBuilder buffer, AtomicReference<Message> editingMessage) {
-        String content = buffer.toString();
-        if (content.isBlank()) {
-            return CompletableFuture.completedFuture(editingMessage.get());
-        }
-        Message lastMsg = editingMessage.get();
-        if (lastMsg == null) {
-            return CompletableFuture.failedFuture(new IllegalStateException("No message to edit."));
-        }
-        return completeHandleCodeBlock(lastMsg, content).thenApply(sentMsg -> {
-            editingMessage.set(sentMsg);
-            return sentMsg;
-        });
-    }
-    
     private String getContentTypeFromFileName(String fileName) {
         String lowerName = fileName.toLowerCase(Locale.ROOT);
         if (lowerName.endsWith(".png")) return "image/png";
@@ -433,27 +442,6 @@ public class MessageService {
         return "application/octet-stream";
     }
     
-    private int lastIncompleteCodeBlockStartIndex(String text) {
-        int lastIndex = -1;
-        int count = 0;
-        Pattern pattern = Pattern.compile("```");
-        Matcher matcher = pattern.matcher(text);
-        while (matcher.find()) {
-            count++;
-            if (count % 2 != 0) {
-                lastIndex = matcher.start();
-            } else {
-                lastIndex = -1;
-            }
-        }
-        return lastIndex;
-    }
-    
-    private boolean isInsideIncompleteCodeBlock(String text) {
-        long count = Pattern.compile("```").matcher(text).results().count();
-        return count % 2 != 0;
-    }
-    
     public List<CompletableFuture<Message>> completeSendInChunks(GuildChannel channel, String text) {
         List<CompletableFuture<Message>> chunks = new ArrayList<>();
         int maxLength = 2000;
@@ -0,0 +1,268 @@
+/*  RoutingService.java The purpose of this class is to spread a completion
+ *  across the configured providers, hedging slow calls and failing over on
+ *  provider errors.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.service;
+
+import com.brandongcobb.discord.Application;
+import com.brandongcobb.discord.component.provider.ProviderHttpException;
+import com.brandongcobb.discord.records.Delta;
+import com.brandongcobb.discord.records.ProviderRoute;
+import com.brandongcobb.discord.registry.MetricsRegistry;
+import com.brandongcobb.discord.registry.ModelRegistry;
+import com.brandongcobb.discord.utils.inc.Helpers;
+import com.brandongcobb.metadata.MetadataContainer;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+@Service
+public class RoutingService {
+
+    private static final Logger LOGGER = Logger.getLogger(Application.class.getName());
+    private final AIService ais;
+    private final ModelRegistry modelRegistry = new ModelRegistry();
+    private final String mode = System.getenv().getOrDefault("DISCORD_ROUTING", "off");
+    private final int hedgePercentile = Helpers.getEnvInt("DISCORD_HEDGE_PERCENTILE", 95);
+    private final int hedgeMinSamples = Helpers.getEnvInt("DISCORD_HEDGE_MIN_SAMPLES", 20);
+    private final long hedgeDelayMillis = Helpers.getEnvInt("DISCORD_HEDGE_DELAY_MS", 3000);
+    private final long hedgeFloorMillis = Helpers.getEnvInt("DISCORD_HEDGE_FLOOR_MS", 250);
+    private final int streamBuffer = Helpers.getEnvInt("DISCORD_STREAM_BUFFER", 4096);
+
+    @Autowired
+    public RoutingService(AIService ais) {
+        this.ais = ais;
+    }
+
+    /*
+     *  Routes are DISCORD_PROVIDER/DISCORD_MODEL followed by DISCORD_ROUTES ("provider:model,provider:model").
+     */
+    public List<ProviderRoute> getRoutes() {
+        List<ProviderRoute> routes = new ArrayList<>();
+        ProviderRoute primary = new ProviderRoute(System.getenv("DISCORD_PROVIDER"), System.getenv("DISCORD_MODEL"));
+        routes.add(primary);
+        if ("off".equals(mode)) return routes;
+        String configured = System.getenv("DISCORD_ROUTES");
+        if (configured == null || configured.isBlank()) return routes;
+        for (String entry : configured.split(",")) {
+            String trimmed = entry.trim();
+            int colon = trimmed.indexOf(':');
+            if (colon <= 0 || colon == trimmed.length() - 1) {
+                LOGGER.warning("Ignoring malformed DISCORD_ROUTES entry: " + trimmed);
+                continue;
+            }
+            ProviderRoute route = new ProviderRoute(trimmed.substring(0, colon), trimmed.substring(colon + 1));
+            if (!routes.contains(route)) routes.add(route);
+        }
+        return routes;
+    }
+
+    public CompletableFuture<MetadataContainer> completeRequest(String content, List<Message> history, String previousResponseId, String requestType, boolean stream, Consumer<Delta> onDelta, long promptTokens) {
+        List<ProviderRoute> routes = getRoutes();
+        RoutedCall call = new RoutedCall(routes, content, history, previousResponseId, requestType, stream, onDelta, promptTokens);
+        call.start(0);
+        return call.result;
+    }
+
+    /*
+     *  The same routed call as a delta stream ending in Delta.done; cancelling the subscription cancels every attempt.
+     *  At most DISCORD_STREAM_BUFFER (4096) deltas wait for a slow subscriber. Every content delta is part of the reply,
+     *  so none are dropped: past the bound the stream fails with an overflow error and the call is cancelled.
+     */
+    public Flux<Delta> streamRequest(String content, List<Message> history, String previousResponseId, String requestType, long promptTokens) {
+        return Flux.<Delta>create(sink -> {
+            CompletableFuture<MetadataContainer> call = completeRequest(content, history, previousResponseId, requestType, true, sink::next, promptTokens);
+            sink.onDispose(() -> {
+                if (!call.isDone()) call.cancel(true);
+            });
+            call.whenComplete((container, error) -> {
+                if (error != null) {
+                    sink.error(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                } else {
+                    sink.next(Delta.done(container));
+                    sink.complete();
+                }
+            });
+        }, FluxSink.OverflowStrategy.ERROR)
+            .onBackpressureBuffer(streamBuffer, delta -> MetricsRegistry.increment("ai.stream.overflow"));
+    }
+
+    /*
+     *  Helpers
+     */
+    private long getHedgeDelayMillis(ProviderRoute route, boolean streaming) {
+        MetricsRegistry.Timer timer = MetricsRegistry.timer("ai." + route.provider() + (streaming ? ".ttft" : ".latency"));
+        if (timer.getCount() < hedgeMinSamples) return hedgeDelayMillis;
+        return Math.max(hedgeFloorMillis, timer.getPercentile(hedgePercentile, TimeUnit.MILLISECONDS));
+    }
+
+    private static boolean isFailoverError(Throwable error) {
+        ProviderHttpException providerError = ProviderHttpException.find(error);
+        if (providerError != null) return providerError.isRetryable();
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) return true;
+            if (cause.getCause() == cause) break;
+        }
+        return false;
+    }
+
+    /*
+     *  State for one routed completion; every mutation happens under the call's monitor.
+     */
+    private final class RoutedCall {
+
+        private final List<ProviderRoute> routes;
+        private final String content;
+        private final List<Message> history;
+        private final String previousResponseId;
+        private final String requestType;
+        private final boolean stream;
+        private final Consumer<Delta> onDelta;
+        private final long promptTokens;
+        private final CompletableFuture<MetadataContainer> result = new CompletableFuture<>();
+        private final Map<Integer, CompletableFuture<MetadataContainer>> attempts = new HashMap<>();
+        private int next = 0;
+        private int streamOwner = -1;
+        private boolean firstToken = false;
+        private Throwable lastError;
+
+        private RoutedCall(List<ProviderRoute> routes, String content, List<Message> history, String previousResponseId, String requestType, boolean stream, Consumer<Delta> onDelta, long promptTokens) {
+            this.routes = routes;
+            this.content = content;
+            this.history = history;
+            this.previousResponseId = previousResponseId;
+            this.requestType = requestType;
+            this.stream = stream;
+            this.onDelta = onDelta;
+            this.promptTokens = promptTokens;
+            result.whenComplete((container, error) -> cancelAll(-1));
+        }
+
+        private synchronized void start(int index) {
+            if (result.isDone() || index >= routes.size()) return;
+            next = Math.max(next, index + 1);
+            ProviderRoute route = routes.get(index);
+            boolean streaming = onDelta != null || stream;
+            Consumer<Delta> gated = onDelta == null ? null : chunk -> onChunk(index, chunk);
+            // Response ids only make sense to the provider that issued them, which is the primary.
+            String responseId = index == 0 ? previousResponseId : null;
+            CompletableFuture<String> endpointFuture = modelRegistry.completeGetAIEndpoint(false, route.provider(), "discord", requestType);
+            CompletableFuture<String> instructionsFuture = modelRegistry.completeGetInstructions(false, route.provider(), "discord");
+            CompletableFuture<MetadataContainer> attempt = new CompletableFuture<>();
+            attempts.put(index, attempt);
+            attempt.whenComplete((container, error) -> onComplete(index, container, error));
+            endpointFuture.thenCombine(instructionsFuture, AbstractMap.SimpleEntry::new)
+                .thenCompose(pair -> {
+                    try {
+                        CompletableFuture<MetadataContainer> request = ais.completeRequest(pair.getValue(), content, history, responseId, route.model(), requestType, pair.getKey(), stream, gated, route.provider(), promptTokens);
+                        attempt.whenComplete((container, error) -> {
+                            if (attempt.isCancelled()) request.cancel(true);
+                        });
+                        return request;
+                    } catch (Exception e) {
+                        return CompletableFuture.failedFuture(e);
+                    }
+                })
+                .whenComplete((container, error) -> {
+                    if (error != null) {
+                        attempt.completeExceptionally(error);
+                    } else {
+                        attempt.complete(container);
+                    }
+                });
+            if ("hedge".equals(mode) && next < routes.size()) {
+                long delay = getHedgeDelayMillis(route, streaming);
+                CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(() -> hedge(index));
+            }
+        }
+
+        private synchronized void hedge(int index) {
+            if (result.isDone() || firstToken || !attempts.containsKey(index) || next >= routes.size()) return;
+            LOGGER.fine("Hedging " + routes.get(index) + " with " + routes.get(next));
+            MetricsRegistry.increment("routing.hedge.fired");
+            start(next);
+        }
+
+        private void onChunk(int index, Delta chunk) {
+            synchronized (this) {
+                if (result.isDone()) return;
+                if (streamOwner == -1) {
+                    streamOwner = index;
+                    firstToken = true;
+                    cancelAll(index);
+                }
+                if (streamOwner != index) return;
+            }
+            onDelta.accept(chunk);
+        }
+
+        private synchronized void onComplete(int index, MetadataContainer container, Throwable error) {
+            if (attempts.remove(index) == null || result.isDone()) return;
+            if (error == null) {
+                MetricsRegistry.increment("routing.served." + routes.get(index).provider());
+                result.complete(container);
+                return;
+            }
+            lastError = error;
+            LOGGER.warning("Route " + routes.get(index) + " failed: " + error.getMessage());
+            if (firstToken) {
+                // Its deltas already reached the consumer; another route would stream a second answer after the partial one.
+                MetricsRegistry.increment("routing.failover.suppressed");
+                cancelAll(-1);
+                result.completeExceptionally(lastError instanceof CompletionException ? lastError : new CompletionException(lastError));
+                return;
+            }
+            if (isFailoverError(error) && next < routes.size()) {
+                if (attempts.isEmpty()) {
+                    MetricsRegistry.increment("routing.failover");
+                    start(next);
+                }
+                return;
+            }
+            if (attempts.isEmpty()) {
+                result.completeExceptionally(lastError instanceof CompletionException ? lastError : new CompletionException(lastError));
+            }
+        }
+
+        private synchronized void cancelAll(int keep) {
+            List<CompletableFuture<MetadataContainer>> losers = new ArrayList<>();
+            attempts.entrySet().removeIf(entry -> {
+                if (entry.getKey() == keep) return false;
+                losers.add(entry.getValue());
+                return true;
+            });
+            for (CompletableFuture<MetadataContainer> loser : losers) {
+                if (loser.cancel(true)) MetricsRegistry.increment("routing.cancelled");
+            }
+        }
+    }
+}
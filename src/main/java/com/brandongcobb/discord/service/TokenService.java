@@ -0,0 +1,104 @@
+/*  TokenService.java The purpose of this class is to count tokens with the
+ *  right encoding for each model.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.service;
+
+import com.brandongcobb.discord.Application;
+import com.brandongcobb.discord.registry.MetricsRegistry;
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingRegistry;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+@Service
+public class TokenService {
+
+    private static final Logger LOGGER = Logger.getLogger(Application.class.getName());
+    private static final String ESTIMATOR = "estimate";
+    private static final int MESSAGE_OVERHEAD = 4;
+    private static final int MAX_CACHED_TEXTS = 4096;
+    private final EncodingRegistry registry = Encodings.newDefaultEncodingRegistry();
+    private final Map<String, Optional<Encoding>> encodings = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Integer>> counts = new ConcurrentHashMap<>();
+
+    /*
+     *  Counting
+     */
+    public int countTokens(String model, String text) {
+        if (text == null || text.isEmpty()) return 0;
+        Optional<Encoding> encoding = getEncoding(model);
+        String encodingName = encoding.map(Encoding::getName).orElse(ESTIMATOR);
+        Map<String, Integer> cache = counts.computeIfAbsent(encodingName, k -> Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > MAX_CACHED_TEXTS;
+            }
+        }));
+        Integer cached = cache.get(text);
+        if (cached != null) {
+            MetricsRegistry.increment("tokens.cache.hit");
+            return cached;
+        }
+        MetricsRegistry.increment("tokens.cache.miss");
+        int tokens = encoding.map(e -> e.countTokensOrdinary(text)).orElseGet(() -> estimate(text));
+        cache.put(text, tokens);
+        return tokens;
+    }
+
+    public int countMessage(String model, Message message) {
+        if (message instanceof ToolResponseMessage toolMsg) {
+            int tokens = MESSAGE_OVERHEAD;
+            for (ToolResponseMessage.ToolResponse response : toolMsg.getResponses()) {
+                tokens += countTokens(model, response.responseData());
+            }
+            return tokens;
+        }
+        return MESSAGE_OVERHEAD + countTokens(model, message.getText());
+    }
+
+    /*
+     *  Helpers
+     */
+    private Optional<Encoding> getEncoding(String model) {
+        if (model == null) return Optional.empty();
+        return encodings.computeIfAbsent(model, m -> {
+            Optional<Encoding> encoding = registry.getEncodingForModel(m);
+            if (encoding.isEmpty()) {
+                String fallback = System.getenv("DISCORD_TOKEN_ENCODING");
+                if (fallback != null && !fallback.isBlank()) {
+                    encoding = registry.getEncoding(fallback);
+                }
+            }
+            LOGGER.finer("Token encoding for " + m + ": " + encoding.map(Encoding::getName).orElse(ESTIMATOR));
+            return encoding;
+        });
+    }
+
+    private static int estimate(String text) {
+        return (text.length() + 3) / 4;
+    }
+}
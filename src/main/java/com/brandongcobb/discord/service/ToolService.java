@@ -20,19 +20,26 @@ package com.brandongcobb.discord.service;
 
 import com.brandongcobb.discord.Application;
 import com.brandongcobb.discord.domain.ToolStatus;
+import com.brandongcobb.discord.domain.ToolStatusWrapper;
 import com.brandongcobb.discord.domain.input.*;
+import com.brandongcobb.discord.registry.MetricsRegistry;
 import com.brandongcobb.discord.tools.*;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.io.SerializedString;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.RawValue;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 @Service
@@ -51,7 +58,10 @@ public class ToolService {
     private static final Logger LOGGER = Logger.getLogger(Application.class.getName());
     private final ObjectMapper mapper = new ObjectMapper();
     private final ChatMemory chatMemory;
-    private final Map<String, CustomTool<?, ?>> tools = new HashMap<>();
+    private final Map<String, CustomTool<?, ?>> tools = new ConcurrentHashMap<>();
+    private final AtomicLong toolsVersion = new AtomicLong();
+    private volatile long compiledVersion = -1L;
+    private volatile RawValue compiledTools;
 
     @Autowired
     public ToolService(ChatMemory chatMemory,
@@ -78,10 +88,45 @@ public class ToolService {
         this.modifyGuild = modifyGuild;
     }
     
+    /*
+     *  JSON-RPC entry point for external MCP clients; the result is the tool's output as a JSON tree.
+     */
     public CompletableFuture<JsonNode> callTool(String name, JsonNode arguments) {
+        return invoke(name, arguments)
+            .thenApply(result -> {
+                if (result instanceof ToolResult tr) {
+                    return tr.getOutput();
+                } else {
+                    return mapper.valueToTree(result);
+                }
+            });
+    }
+
+    /*
+     *  In-process entry point for the agent loop: arguments go straight from the parsed tool call to the typed
+     *  input and the ToolStatus comes back as is, with no JSON text in between. Timed per tool.
+     */
+    public CompletableFuture<ToolStatus> dispatch(String name, JsonNode arguments) {
+        long started = System.nanoTime();
+        return invoke(name, arguments)
+            .thenApply(result -> {
+                if (result instanceof ToolStatus status) {
+                    return status;
+                }
+                JsonNode output = result instanceof ToolResult tr ? tr.getOutput() : mapper.valueToTree(result);
+                return (ToolStatus) new ToolStatusWrapper(output == null ? "" : output.toString(), true, null);
+            })
+            .whenComplete((status, error) -> {
+                MetricsRegistry.record("tools." + name + ".latency", System.nanoTime() - started);
+                if (error != null || status == null || !status.isSuccess()) MetricsRegistry.increment("tools." + name + ".failed");
+            });
+    }
+
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<Object> invoke(String name, JsonNode arguments) {
         CustomTool<?, ?> customTool = tools.get(name);
         if (customTool == null) {
-            CompletableFuture<JsonNode> failed = new CompletableFuture<>();
+            CompletableFuture<Object> failed = new CompletableFuture<>();
             failed.completeExceptionally(new IllegalArgumentException("Tool not found: " + name));
             return failed;
         }
@@ -90,28 +135,74 @@ public class ToolService {
             if (inputObj instanceof ToolInput toolInput) {
                 toolInput.setOriginalJson(arguments);
             }
-            CustomTool<Object, ?> typedTool = (CustomTool<Object, ?>) customTool;
-            return typedTool.run(inputObj)
-                .thenApply(result -> {
-                    if (result instanceof ToolResult tr) {
-                        return tr.getOutput();
-                    } else {
-                        return mapper.valueToTree(result);
-                    }
-                });
+            CustomTool<Object, Object> typedTool = (CustomTool<Object, Object>) customTool;
+            return typedTool.run(inputObj);
         } catch (Exception e) {
-            CompletableFuture<JsonNode> failed = new CompletableFuture<>();
+            CompletableFuture<Object> failed = new CompletableFuture<>();
             failed.completeExceptionally(e);
             return failed;
         }
     }
 
+    /*
+     *  Unknown tools count as mutating so they never join a parallel batch.
+     */
+    public boolean isReadOnly(String name) {
+        CustomTool<?, ?> tool = tools.get(name);
+        return tool != null && tool.isReadOnly();
+    }
+
+    /*
+     *  Returns the serialized `tools` array, rebuilt only after the registered set changes.
+     */
+    public RawValue getCompiledTools() {
+        RawValue compiled = compiledTools;
+        if (compiled != null && compiledVersion == toolsVersion.get()) {
+            return compiled;
+        }
+        synchronized (this) {
+            long version = toolsVersion.get();
+            if (compiledTools == null || compiledVersion != version) {
+                compiledTools = compileTools();
+                compiledVersion = version;
+            }
+            return compiledTools;
+        }
+    }
+
     public Collection<CustomTool<?, ?>> getTools() {
         return tools.values();
     }
     
+    public long getToolsVersion() {
+        return toolsVersion.get();
+    }
+    
     public void registerTool(CustomTool<?, ?> tool) {
-        tools.put(tool.getName(), tool);
+        CustomTool<?, ?> previous = tools.put(tool.getName(), tool);
+        if (previous != tool) {
+            toolsVersion.incrementAndGet();
+        }
+    }
+    
+    private RawValue compileTools() {
+        ArrayNode array = mapper.createArrayNode();
+        for (CustomTool<?, ?> tool : tools.values()) {
+            ObjectNode function = mapper.createObjectNode();
+            function.put("name", tool.getName());
+            function.put("description", tool.getDescription());
+            function.set("parameters", tool.getJsonSchema());
+            ObjectNode toolNode = array.addObject();
+            toolNode.put("type", "function");
+            toolNode.set("function", function);
+        }
+        try {
+            String json = mapper.writeValueAsString(array);
+            LOGGER.finer("Compiled " + tools.size() + " tool definitions (" + json.length() + " chars)");
+            return new RawValue(new SerializedString(json));
+        } catch (Exception e) {
+            throw new IllegalStateException("compileTools failed: " + e.getMessage(), e);
+        }
     }
 
     /*
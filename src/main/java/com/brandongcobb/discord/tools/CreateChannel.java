@@ -20,6 +20,7 @@
 package com.brandongcobb.discord.tools;
 
 import com.brandongcobb.discord.component.bot.DiscordBot;
+import com.brandongcobb.discord.component.executor.IoExecutor;
 import com.brandongcobb.discord.domain.ToolStatus;
 import com.brandongcobb.discord.domain.ToolStatusWrapper;
 import com.brandongcobb.discord.domain.input.CreateChannelInput;
@@ -47,10 +48,12 @@ public class CreateChannel implements CustomTool<CreateChannelInput, ToolStatus>
     private JDA api;
     private static final ObjectMapper mapper = new ObjectMapper();
     private final ChatMemory chatMemory;
+    private final IoExecutor ioExecutor;
 
     @Autowired
-    public CreateChannel(ChatMemory chatMemory) {
+    public CreateChannel(ChatMemory chatMemory, IoExecutor ioExecutor) {
         this.chatMemory = chatMemory;
+        this.ioExecutor = ioExecutor;
     }
 
     /*
@@ -174,7 +177,7 @@ public class CreateChannel implements CustomTool<CreateChannelInput, ToolStatus>
                 String toolCall = "{\"tool\":\"" + getName() + "\",\"arguments\":" + input.getOriginalJson().toString() + "}";
                 return new ToolStatusWrapper("Unexpected error: " + e.getMessage(), false, toolCall);
             }
-        });
+        }, ioExecutor);
     }
 }
 //🛠️ 1. GetServerInfo
@@ -26,5 +26,11 @@ public interface CustomTool<I, O> {
     JsonNode getJsonSchema();
     Class<I> getInputClass();
     CompletableFuture<O> run(I input) throws Exception;
+    /*
+     *  Read-only tools only query Discord, so several may run at once within a turn.
+     */
+    default boolean isReadOnly() {
+        return false;
+    }
 }
 
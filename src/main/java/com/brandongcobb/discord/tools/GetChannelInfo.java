@@ -19,6 +19,7 @@
 package com.brandongcobb.discord.tools;
 
 import com.brandongcobb.discord.component.bot.DiscordBot;
+import com.brandongcobb.discord.component.executor.IoExecutor;
 import com.brandongcobb.discord.domain.ToolStatus;
 import com.brandongcobb.discord.domain.ToolStatusWrapper;
 import com.brandongcobb.discord.domain.input.GetChannelInfoInput;
@@ -54,10 +55,12 @@ public class GetChannelInfo implements CustomTool<GetChannelInfoInput, ToolStatu
     private JDA api;
     private static final ObjectMapper mapper = new ObjectMapper();
     private final ChatMemory chatMemory;
+    private final IoExecutor ioExecutor;
 
     @Autowired
-    public GetChannelInfo(ChatMemory chatMemory) {
+    public GetChannelInfo(ChatMemory chatMemory, IoExecutor ioExecutor) {
         this.chatMemory = chatMemory;
+        this.ioExecutor = ioExecutor;
     }
 
     /*
@@ -109,6 +112,11 @@ public class GetChannelInfo implements CustomTool<GetChannelInfoInput, ToolStatu
     public String getName() {
         return "get_channel_info";
     }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
     
     /*
      * Tool
@@ -223,7 +231,7 @@ public class GetChannelInfo implements CustomTool<GetChannelInfoInput, ToolStatu
             } catch (Exception e) {
                 return new ToolStatusWrapper("Unexpected error: " + e.getMessage(), false, toolCall);
             }
-        });
+        }, ioExecutor);
     }
 }
 //🛠️ 1. GetServerInfo
@@ -19,6 +19,7 @@
 package com.brandongcobb.discord.tools;
 
 import com.brandongcobb.discord.component.bot.DiscordBot;
+import com.brandongcobb.discord.component.executor.IoExecutor;
 import com.brandongcobb.discord.domain.ToolStatus;
 import com.brandongcobb.discord.domain.ToolStatusWrapper;
 import com.brandongcobb.discord.domain.input.GetGuildInfoInput;
@@ -45,10 +46,12 @@ public class GetGuildInfo implements CustomTool<GetGuildInfoInput, ToolStatus> {
     private JDA api;
     private static final ObjectMapper mapper = new ObjectMapper();
     private final ChatMemory chatMemory;
+    private final IoExecutor ioExecutor;
 
     @Autowired
-    public GetGuildInfo(ChatMemory chatMemory) {
+    public GetGuildInfo(ChatMemory chatMemory, IoExecutor ioExecutor) {
         this.chatMemory = chatMemory;
+        this.ioExecutor = ioExecutor;
     }
 
     /*
@@ -118,6 +121,11 @@ public class GetGuildInfo implements CustomTool<GetGuildInfoInput, ToolStatus> {
     public String getName() {
         return "get_guild_info";
     }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
     
     /*
      * Tool
@@ -190,7 +198,7 @@ public class GetGuildInfo implements CustomTool<GetGuildInfoInput, ToolStatus> {
                 String toolCall = "{\"tool\":\"" + getName() + "\",\"arguments\":" + input.getOriginalJson().toString() + "}";
                 return new ToolStatusWrapper("Unexpected error: " + e.getMessage(), false, toolCall);
             }
-        });
+        }, ioExecutor);
     }
 }
 //🛠️ 1. GetServerInfo
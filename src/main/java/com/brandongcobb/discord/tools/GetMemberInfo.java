@@ -19,6 +19,7 @@
 package com.brandongcobb.discord.tools;
 
 import com.brandongcobb.discord.component.bot.DiscordBot;
+import com.brandongcobb.discord.component.executor.IoExecutor;
 import com.brandongcobb.discord.domain.ToolStatus;
 import com.brandongcobb.discord.domain.ToolStatusWrapper;
 import com.brandongcobb.discord.domain.input.GetMemberInfoInput;
@@ -43,10 +44,12 @@ public class GetMemberInfo implements CustomTool<GetMemberInfoInput, ToolStatus>
     private ApplicationContext ctx;
     private static final ObjectMapper mapper = new ObjectMapper();
     private final ChatMemory chatMemory;
+    private final IoExecutor ioExecutor;
 
     @Autowired
-    public GetMemberInfo(ApplicationContext ctx, ChatMemory chatMemory) {
+    public GetMemberInfo(ApplicationContext ctx, ChatMemory chatMemory, IoExecutor ioExecutor) {
         this.chatMemory = chatMemory;
+        this.ioExecutor = ioExecutor;
         this.ctx = ctx;
     }
 
@@ -96,6 +99,11 @@ public class GetMemberInfo implements CustomTool<GetMemberInfoInput, ToolStatus>
     public String getName() {
         return "get_member_info";
     }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
     
     /*
      * Tool
@@ -144,6 +152,6 @@ public class GetMemberInfo implements CustomTool<GetMemberInfoInput, ToolStatus>
             } catch (Exception e) {
                 return new ToolStatusWrapper("Error fetching member info: " + e.getMessage(), false, toolCall);
             }
-        });
+        }, ioExecutor);
     }
 }
@@ -19,6 +19,7 @@
 package com.brandongcobb.discord.tools;
 
 import com.brandongcobb.discord.component.bot.DiscordBot;
+import com.brandongcobb.discord.component.executor.IoExecutor;
 import com.brandongcobb.discord.domain.ToolStatus;
 import com.brandongcobb.discord.domain.ToolStatusWrapper;
 import com.brandongcobb.discord.domain.input.ListChannelsInput;
@@ -47,10 +48,12 @@ public class ListChannels implements CustomTool<ListChannelsInput, ToolStatus> {
     private ApplicationContext ctx;
     private static final ObjectMapper mapper = new ObjectMapper();
     private final ChatMemory chatMemory;
+    private final IoExecutor ioExecutor;
 
     @Autowired
-    public ListChannels(ApplicationContext ctx, ChatMemory chatMemory) {
+    public ListChannels(ApplicationContext ctx, ChatMemory chatMemory, IoExecutor ioExecutor) {
         this.chatMemory = chatMemory;
+        this.ioExecutor = ioExecutor;
         this.ctx = ctx;
     }
 
@@ -108,6 +111,11 @@ public class ListChannels implements CustomTool<ListChannelsInput, ToolStatus> {
     public String getName() {
         return "list_channels";
     }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
     
     /*
      * Tool
@@ -203,6 +211,6 @@ public class ListChannels implements CustomTool<ListChannelsInput, ToolStatus> {
             } catch (Exception e) {
                 return new ToolStatusWrapper("Unexpected error: " + e.getMessage(), false, "IO error: " + e.getMessage());
             }
-        });
+        }, ioExecutor);
     }
 }
@@ -19,6 +19,7 @@
 package com.brandongcobb.discord.tools;
 
 import com.brandongcobb.discord.component.bot.DiscordBot;
+import com.brandongcobb.discord.component.executor.IoExecutor;
 import com.brandongcobb.discord.domain.ToolStatus;
 import com.brandongcobb.discord.domain.ToolStatusWrapper;
 import com.brandongcobb.discord.domain.input.ListChannelsInput;
@@ -47,10 +48,12 @@ public class ListMembers implements CustomTool<ListMembersInput, ToolStatus> {
     private ApplicationContext ctx;
     private static final ObjectMapper mapper = new ObjectMapper();
     private final ChatMemory chatMemory;
+    private final IoExecutor ioExecutor;
 
     @Autowired
-    public ListMembers(ApplicationContext ctx, ChatMemory chatMemory) {
+    public ListMembers(ApplicationContext ctx, ChatMemory chatMemory, IoExecutor ioExecutor) {
         this.chatMemory = chatMemory;
+        this.ioExecutor = ioExecutor;
         this.ctx = ctx;
     }
 
@@ -100,6 +103,11 @@ public class ListMembers implements CustomTool<ListMembersInput, ToolStatus> {
     public String getName() {
         return "list_members";
     }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
     
     /*
      * Tool
@@ -150,6 +158,6 @@ public class ListMembers implements CustomTool<ListMembersInput, ToolStatus> {
             } catch (Exception e) {
                 return new ToolStatusWrapper("Error listing members: " + e.getMessage(), false, toolCall);
             }
-        });
+        }, ioExecutor);
     }
 }
@@ -19,6 +19,7 @@
 package com.brandongcobb.discord.tools;
 
 import com.brandongcobb.discord.component.bot.DiscordBot;
+import com.brandongcobb.discord.component.executor.IoExecutor;
 import com.brandongcobb.discord.domain.ToolStatus;
 import com.brandongcobb.discord.domain.ToolStatusWrapper;
 import com.brandongcobb.discord.domain.input.ListRolesInput;
@@ -48,10 +49,12 @@ public class ListRoles implements CustomTool<ListRolesInput, ToolStatus> {
     private JDA api;
     private static final ObjectMapper mapper = new ObjectMapper();
     private final ChatMemory chatMemory;
+    private final IoExecutor ioExecutor;
 
     @Autowired
-    public ListRoles(ChatMemory chatMemory) {
+    public ListRoles(ChatMemory chatMemory, IoExecutor ioExecutor) {
         this.chatMemory = chatMemory;
+        this.ioExecutor = ioExecutor;
     }
 
     /*
@@ -97,6 +100,11 @@ public class ListRoles implements CustomTool<ListRolesInput, ToolStatus> {
     public String getName() {
         return "list_roles";
     }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
     
     /*
      * Tool
@@ -151,6 +159,6 @@ public class ListRoles implements CustomTool<ListRolesInput, ToolStatus> {
                 String toolCall = "{\"tool\":\"" + getName() + "\",\"arguments\":" + input.getOriginalJson().toString() + "}";
                 return new ToolStatusWrapper("Unexpected error: " + e.getMessage(), false, toolCall);
             }
-        });
+        }, ioExecutor);
     }
 }
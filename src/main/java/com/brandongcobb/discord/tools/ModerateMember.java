@@ -20,6 +20,7 @@
 package com.brandongcobb.discord.tools;
 
 import com.brandongcobb.discord.component.bot.DiscordBot;
+import com.brandongcobb.discord.component.executor.IoExecutor;
 import com.brandongcobb.discord.domain.ToolStatus;
 import com.brandongcobb.discord.domain.ToolStatusWrapper;
 import com.brandongcobb.discord.domain.input.ModerateMemberInput;
@@ -49,10 +50,12 @@ public class ModerateMember implements CustomTool<ModerateMemberInput, ToolStatu
     private JDA api;
     private static final ObjectMapper mapper = new ObjectMapper();
     private final ChatMemory chatMemory;
+    private final IoExecutor ioExecutor;
 
     @Autowired
-    public ModerateMember(ChatMemory chatMemory) {
+    public ModerateMember(ChatMemory chatMemory, IoExecutor ioExecutor) {
         this.chatMemory = chatMemory;
+        this.ioExecutor = ioExecutor;
     }
 
     /*
@@ -216,7 +219,7 @@ public class ModerateMember implements CustomTool<ModerateMemberInput, ToolStatu
             } catch (Exception e) {
                 return new ToolStatusWrapper("Moderation failed: " + e.getMessage(), false, toolCall);
             }
-        });
+        }, ioExecutor);
     }
 }
 //🛠️ 1. GetServerInfo
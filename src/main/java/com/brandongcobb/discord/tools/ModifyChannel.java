@@ -20,6 +20,7 @@
 package com.brandongcobb.discord.tools;
 
 import com.brandongcobb.discord.component.bot.DiscordBot;
+import com.brandongcobb.discord.component.executor.IoExecutor;
 import com.brandongcobb.discord.domain.ToolStatus;
 import com.brandongcobb.discord.domain.ToolStatusWrapper;
 import com.brandongcobb.discord.domain.input.ModifyChannelInput;
@@ -46,10 +47,12 @@ public class ModifyChannel implements CustomTool<ModifyChannelInput, ToolStatus>
     private JDA api;
     private static final ObjectMapper mapper = new ObjectMapper();
     private final ChatMemory chatMemory;
+    private final IoExecutor ioExecutor;
 
     @Autowired
-    public ModifyChannel(ChatMemory chatMemory) {
+    public ModifyChannel(ChatMemory chatMemory, IoExecutor ioExecutor) {
         this.chatMemory = chatMemory;
+        this.ioExecutor = ioExecutor;
     }
 
     /*
@@ -175,7 +178,7 @@ public class ModifyChannel implements CustomTool<ModifyChannelInput, ToolStatus>
                 String toolCall = "{\"tool\":\"" + getName() + "\",\"arguments\":" + input.getOriginalJson().toString() + "}";
                 return new ToolStatusWrapper("Unexpected error: " + e.getMessage(), false, toolCall);
             }
-        });
+        }, ioExecutor);
     }
 }
 //🛠️ 1. GetServerInfo
@@ -19,6 +19,7 @@
 package com.brandongcobb.discord.tools;
 
 import com.brandongcobb.discord.component.bot.DiscordBot;
+import com.brandongcobb.discord.component.executor.IoExecutor;
 import com.brandongcobb.discord.domain.ToolStatus;
 import com.brandongcobb.discord.domain.ToolStatusWrapper;
 import com.brandongcobb.discord.domain.input.ModifyGuildInput;
@@ -53,10 +54,12 @@ public class ModifyGuild implements CustomTool<ModifyGuildInput, ToolStatus> {
     private JDA api;
     private static final ObjectMapper mapper = new ObjectMapper();
     private final ChatMemory chatMemory;
+    private final IoExecutor ioExecutor;
 
     @Autowired
-    public ModifyGuild(ChatMemory chatMemory) {
+    public ModifyGuild(ChatMemory chatMemory, IoExecutor ioExecutor) {
         this.chatMemory = chatMemory;
+        this.ioExecutor = ioExecutor;
     }
 
     /*
@@ -284,7 +287,7 @@ public class ModifyGuild implements CustomTool<ModifyGuildInput, ToolStatus> {
             } catch (Exception e) {
                 return new ToolStatusWrapper("Error modifying guild: " + e.getMessage(), false, toolCall);
             }
-        });
+        }, ioExecutor);
     }
 }
 //🛠️ 1. GetServerInfo
@@ -18,10 +18,12 @@
  */
 package com.brandongcobb.discord.utils.handlers;
 
+import com.brandongcobb.discord.records.ToolCall;
 import com.brandongcobb.metadata.Metadata;
 import com.brandongcobb.metadata.MetadataContainer;
 import com.brandongcobb.metadata.MetadataKey;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 public class MetadataUtils {
@@ -40,6 +42,13 @@ public class MetadataUtils {
         return CompletableFuture.completedFuture(this.container.get(outputKey));
     }
     
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<List<ToolCall>> completeGetToolCalls() {
+        MetadataKey<Object> toolCallsKey = new MetadataKey<>("tool_calls", Metadata.ANY);
+        Object toolCalls = this.container.get(toolCallsKey);
+        return CompletableFuture.completedFuture(toolCalls instanceof List<?> list ? (List<ToolCall>) list : List.of());
+    }
+
     public CompletableFuture<String> completeGetJSONContent() {
         MetadataKey<String> jsonContentKey = new MetadataKey<>("json_response", Metadata.STRING);
         return CompletableFuture.completedFuture(this.container.get(jsonContentKey));
@@ -210,6 +210,22 @@ public class Helpers {
         return merged;
     }
 
+    public static boolean getEnvBoolean(String name, boolean fallback) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? fallback : Boolean.parseBoolean(value.trim());
+    }
+
+    public static int getEnvInt(String name, int fallback) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) return fallback;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.warning("Ignoring non-numeric " + name + "=" + value + ", using " + fallback);
+            return fallback;
+        }
+    }
+
     public static boolean isNullOrEmpty(Object[] objects) {
         for (int i = 0; i < objects.length; i++) {
             if (objects[i] instanceof String) {
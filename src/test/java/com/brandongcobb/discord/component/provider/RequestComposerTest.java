@@ -0,0 +1,94 @@
+/*  RequestComposerTest.java The purpose of this class is to check the
+ *  roles RequestComposer gives replayed conversation history.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.provider;
+
+import com.brandongcobb.discord.service.ToolService;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RequestComposerTest {
+
+    private RequestComposer composer;
+    private ProviderAdapter adapter;
+
+    @Before
+    public void setUp() {
+        composer = new RequestComposer(mock(ToolService.class));
+        adapter = mock(ProviderAdapter.class);
+        when(adapter.getName()).thenReturn("openai");
+        when(adapter.supportsNativeTools()).thenReturn(true);
+    }
+
+    /*
+     *  The second turn is sent with no new prompt, so the request has to end on the user's turn from memory.
+     */
+    @Test
+    public void twoTurnHistoryKeepsRolesAndEndsOnUser() {
+        List<Message> history = List.of(
+            new UserMessage("Guild ID:1Channel ID: 2 what is 2+2?"),
+            new AssistantMessage("4"),
+            new UserMessage("Guild ID:1Channel ID: 2 and times 3?"));
+        Map<String, Object> body = composer.compose(adapter, "deprecated", "gpt-4o", "Be brief.", history, null, null, false, 256);
+        assertEquals(List.of("system", "user", "assistant", "user"), roles(body, "messages"));
+        assertEquals("Guild ID:1Channel ID: 2 and times 3?", contents(body, "messages").get(3));
+    }
+
+    @Test
+    public void responsesApiReplaysTheSameRoles() {
+        List<Message> history = List.of(new UserMessage("first"), new AssistantMessage("reply"), new UserMessage("second"));
+        Map<String, Object> body = composer.compose(adapter, "response", "gpt-4o", "Be brief.", history, null, null, false, 256);
+        assertEquals(List.of("system", "user", "assistant", "user"), roles(body, "arguments"));
+    }
+
+    @Test
+    public void toolResultsAreReplayedAsUserTurns() {
+        ToolResponseMessage tool = new ToolResponseMessage(List.of(new ToolResponseMessage.ToolResponse("call_1", "search", "found it")));
+        List<Message> history = List.of(new UserMessage("look it up"), new AssistantMessage("searching"), tool);
+        Map<String, Object> body = composer.compose(adapter, "deprecated", "gpt-4o", "Be brief.", history, null, null, false, 256);
+        assertEquals(List.of("system", "user", "assistant", "user"), roles(body, "messages"));
+        assertEquals("TOOL: found it", contents(body, "messages").get(3));
+    }
+
+    /*
+     *  Helpers
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> messages(Map<String, Object> body, String key) {
+        return (List<Map<String, Object>>) body.get(key);
+    }
+
+    private static List<Object> roles(Map<String, Object> body, String key) {
+        return messages(body, key).stream().map(message -> message.get("role")).toList();
+    }
+
+    private static List<Object> contents(Map<String, Object> body, String key) {
+        return messages(body, key).stream().map(message -> message.get("content")).toList();
+    }
+}
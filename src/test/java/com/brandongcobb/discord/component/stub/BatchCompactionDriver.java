@@ -0,0 +1,97 @@
+/*  BatchCompactionDriver.java The purpose of this class is to run one
+ *  background compaction through the batch API against the stub provider.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.stub;
+
+import com.brandongcobb.discord.component.cache.ResponseCache;
+import com.brandongcobb.discord.component.cache.SingleFlight;
+import com.brandongcobb.discord.component.executor.IoExecutor;
+import com.brandongcobb.discord.component.provider.RequestComposer;
+import com.brandongcobb.discord.component.provider.StubAdapter;
+import com.brandongcobb.discord.component.transport.ProviderTransport;
+import com.brandongcobb.discord.registry.MetricsRegistry;
+import com.brandongcobb.discord.registry.ProviderRegistry;
+import com.brandongcobb.discord.service.AIService;
+import com.brandongcobb.discord.service.BatchService;
+import com.brandongcobb.discord.service.CompactionService;
+import com.brandongcobb.discord.service.ContextService;
+import com.brandongcobb.discord.service.TokenService;
+import com.brandongcobb.discord.service.ToolService;
+import com.brandongcobb.discord.utils.inc.Helpers;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.MessageWindowChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.util.List;
+
+/*
+ *  Fills one conversation, starts a batched compaction and flushes the queue, so the summary request goes through
+ *  upload (POST /files), create (POST /batches), poll (GET /batches/{id}) and result routing (GET /files/{id}/content).
+ *  Settings:
+ *      DISCORD_LOAD_TURNS (40), DISCORD_STUB_BATCH_MS (500).
+ *  The stub starts on DISCORD_STUB_PORT, which must match DISCORD_STUB_URL when that is set.
+ */
+public class BatchCompactionDriver {
+
+    public static void main(String[] args) throws Exception {
+        int turns = Helpers.getEnvInt("DISCORD_LOAD_TURNS", 40);
+        StubProviderServer stub = new StubProviderServer(Helpers.getEnvInt("DISCORD_STUB_PORT", 18080));
+        stub.setReplyTokens(40);
+        stub.start();
+        IoExecutor ioExecutor = new IoExecutor();
+        ProviderTransport transport = new ProviderTransport(ioExecutor);
+        StubAdapter adapter = new StubAdapter(transport);
+        ToolService toolService = new ToolService(null, null, null, null, null, null, null, null, null, null, null);
+        TokenService tokenService = new TokenService();
+        BatchService batchService = new BatchService(transport, stub.getBaseUrl(), 100);
+        AIService ais = new AIService(new ProviderRegistry(List.of(adapter)), tokenService, new ResponseCache(),
+            new SingleFlight(ioExecutor), new RequestComposer(toolService), ioExecutor, batchService);
+        ContextService contextService = new ContextService(tokenService);
+        ChatMemory chatMemory = MessageWindowChatMemory.builder().maxMessages(turns * 2).build();
+        CompactionService compactionService = new CompactionService(ais, contextService, chatMemory, "stub", "stub", true);
+        String conversationId = "batch-driver";
+        try {
+            for (int i = 0; i < turns; i++) {
+                for (var message : List.of(new UserMessage("turn " + i + ": please remember the number " + (i * 7)), new AssistantMessage("Noted " + (i * 7) + "."))) {
+                    chatMemory.add(conversationId, message);
+                    contextService.append(conversationId, "stub", message);
+                }
+            }
+            long before = contextService.getTokens(conversationId);
+            long started = System.nanoTime();
+            var compaction = compactionService.completeCompact(conversationId, "stub", true);
+            // The batch would otherwise wait DISCORD_BATCH_FLUSH_MS for company.
+            while (batchService.getPending() == 0 && !compaction.isDone()) Thread.sleep(10);
+            batchService.flush();
+            boolean compacted = compaction.join();
+            double seconds = (System.nanoTime() - started) / 1e9;
+            System.out.printf("compacted=%s tokens %d -> %d elapsed=%.2fs%n", compacted, before, contextService.getTokens(conversationId), seconds);
+            for (String name : List.of("batch.submitted", "batch.completed", "batch.failed", "compaction.started.batch", "compaction.completed")) {
+                System.out.println(name + "=" + MetricsRegistry.getCount(name));
+            }
+            System.out.println("stored=" + chatMemory.get(conversationId).size() + " context=" + contextService.getSize(conversationId));
+            String rendered = contextService.getRendered(conversationId);
+            System.out.println(rendered.substring(0, Math.min(160, rendered.length())).replace('\n', ' '));
+        } finally {
+            transport.close();
+            ioExecutor.close();
+            stub.stop();
+        }
+    }
+}
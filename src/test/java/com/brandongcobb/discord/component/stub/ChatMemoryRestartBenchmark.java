@@ -0,0 +1,80 @@
+/*  ChatMemoryRestartBenchmark.java The purpose of this class is to fill
+ *  the chat memory log and time how long reopening it takes.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.stub;
+
+import com.brandongcobb.discord.component.memory.LogChatMemory;
+import com.brandongcobb.discord.utils.inc.Helpers;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/*
+ *  Writes DISCORD_BENCH_MESSAGES (1000000) messages over DISCORD_BENCH_CONVERSATIONS (10000) conversations into a
+ *  scratch directory, then reopens it twice: from the index snapshot, and with the snapshot removed (full replay).
+ */
+public class ChatMemoryRestartBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int messages = Helpers.getEnvInt("DISCORD_BENCH_MESSAGES", 1_000_000);
+        int conversations = Helpers.getEnvInt("DISCORD_BENCH_CONVERSATIONS", 10_000);
+        Path directory = Files.createTempDirectory("discord-memory-bench");
+        try {
+            long started = System.nanoTime();
+            try (LogChatMemory memory = new LogChatMemory(directory)) {
+                for (int i = 0; i < messages; i++) {
+                    Message message = i % 2 == 0
+                        ? new UserMessage("message " + i + " in a conversation about nothing in particular")
+                        : new AssistantMessage("reply " + i + " with a little more text than the question had");
+                    memory.add("conversation-" + (i % conversations), message);
+                }
+            }
+            System.out.printf("write: messages=%d conversations=%d elapsed=%.0fms bytes=%d%n", messages, conversations,
+                (System.nanoTime() - started) / 1e6, size(directory));
+            reopen("snapshot", directory, conversations);
+            Files.delete(directory.resolve("index.snapshot"));
+            reopen("replay", directory, conversations);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static void reopen(String label, Path directory, int conversations) throws Exception {
+        long started = System.nanoTime();
+        try (LogChatMemory memory = new LogChatMemory(directory)) {
+            double openMillis = (System.nanoTime() - started) / 1e6;
+            List<Message> last = memory.get("conversation-" + (conversations - 1));
+            System.out.printf("%s: open=%.1fms conversations=%d window=%d last=\"%s\"%n", label, openMillis, memory.size(),
+                last.size(), last.isEmpty() ? "" : last.get(last.size() - 1).getText());
+        }
+    }
+
+    private static long size(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+}
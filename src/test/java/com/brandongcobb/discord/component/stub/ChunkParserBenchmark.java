@@ -0,0 +1,129 @@
+/*  ChunkParserBenchmark.java The purpose of this class is to compare the
+ *  old JsonNode chunk path with ChatCompletionChunkParser on recorded
+ *  chat-completion frames.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.stub;
+
+import com.brandongcobb.discord.component.transport.ChatCompletionChunkParser;
+import com.brandongcobb.discord.utils.inc.Helpers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/*
+ *  One stream is the frames of a recorded gpt-4o-mini reply: a role frame, content tokens, a streamed tool call,
+ *  the finish frame and the usage frame. Both paths consume the same bytes and keep the same result.
+ *  Settings:
+ *      DISCORD_BENCH_STREAMS (20000), DISCORD_BENCH_WARMUP (5000).
+ */
+public class ChunkParserBenchmark {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String PREFIX = "{\"id\":\"chatcmpl-BQxk2mJ9pQeR7sT1uVwXyZ0aB3cD\",\"object\":\"chat.completion.chunk\",\"created\":1745853012,"
+        + "\"model\":\"gpt-4o-mini-2024-07-18\",\"service_tier\":\"default\",\"system_fingerprint\":\"fp_0392822090\",\"choices\":[{\"index\":0,\"delta\":";
+    private static final String TOKENS = "Sure! I'll look up the members of that channel first, then check which of them have the moderator role "
+        + "so we only ping the people who can actually act on the report.";
+
+    public static void main(String[] args) throws Exception {
+        int streams = Helpers.getEnvInt("DISCORD_BENCH_STREAMS", 20_000);
+        int warmup = Helpers.getEnvInt("DISCORD_BENCH_WARMUP", 5_000);
+        List<byte[]> frames = frames();
+        long bytes = frames.stream().mapToLong(frame -> frame.length).sum();
+        System.out.printf("stream: frames=%d bytes=%d%n", frames.size(), bytes);
+        run("jsonnode", frames, warmup, ChunkParserBenchmark::tree);
+        run("jsonparser", frames, warmup, ChunkParserBenchmark::streaming);
+        double[] before = run("jsonnode", frames, streams, ChunkParserBenchmark::tree);
+        double[] after = run("jsonparser", frames, streams, ChunkParserBenchmark::streaming);
+        System.out.printf("speedup=%.1fx allocation=%.1fx less%n", before[0] / after[0], before[1] / after[1]);
+    }
+
+    /*
+     *  The pre-parser path: a JsonNode tree per frame, the last frame converted to a Map at the end.
+     */
+    private static int tree(List<byte[]> frames) throws Exception {
+        StringBuilder content = new StringBuilder();
+        JsonNode last = null;
+        for (byte[] frame : frames) {
+            JsonNode chunk = mapper.readTree(frame, 0, frame.length);
+            JsonNode delta = chunk.path("choices").path(0).path("delta").path("content");
+            if (delta.isTextual()) content.append(delta.textValue());
+            last = chunk;
+        }
+        Map<String, Object> response = mapper.convertValue(last, new TypeReference<Map<String, Object>>() {});
+        return content.length() + response.size();
+    }
+
+    private static int streaming(List<byte[]> frames) throws Exception {
+        ChatCompletionChunkParser parser = new ChatCompletionChunkParser(mapper);
+        for (byte[] frame : frames) {
+            parser.parse(frame, 0, frame.length);
+        }
+        return parser.getContent().length() + parser.toResponseMap().size();
+    }
+
+    private static double[] run(String label, List<byte[]> frames, int streams, Path path) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().threadId();
+        long sink = 0;
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        long started = System.nanoTime();
+        for (int i = 0; i < streams; i++) {
+            sink += path.consume(frames);
+        }
+        long elapsed = System.nanoTime() - started;
+        allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+        double perFrame = elapsed / (double) streams / frames.size();
+        double bytesPerFrame = allocated / (double) streams / frames.size();
+        System.out.printf("%s: streams=%d per_frame=%.0fns frames/s=%.0f alloc/frame=%.0fB (%d)%n",
+            label, streams, perFrame, 1e9 / perFrame, bytesPerFrame, sink);
+        return new double[] {perFrame, bytesPerFrame};
+    }
+
+    private static List<byte[]> frames() {
+        List<String> frames = new ArrayList<>();
+        frames.add(PREFIX + "{\"role\":\"assistant\",\"content\":\"\",\"refusal\":null},\"logprobs\":null,\"finish_reason\":null}]}");
+        for (String token : TOKENS.split("(?<= )")) {
+            frames.add(PREFIX + "{\"content\":\"" + token + "\"},\"logprobs\":null,\"finish_reason\":null}]}");
+        }
+        frames.add(PREFIX + "{\"tool_calls\":[{\"index\":0,\"id\":\"call_Xn4rKq2VbT8mLp0sWc6dHj1e\",\"type\":\"function\","
+            + "\"function\":{\"name\":\"list_members\",\"arguments\":\"\"}}]},\"logprobs\":null,\"finish_reason\":null}]}");
+        for (String fragment : List.of("{\\\"", "guild", "Id\\\":\\\"", "123456789012345678", "\\\",\\\"", "channel", "Id\\\":\\\"",
+                "876543210987654321", "\\\",\\\"", "limit", "\\\":", "25", "}")) {
+            frames.add(PREFIX + "{\"tool_calls\":[{\"index\":0,\"function\":{\"arguments\":\"" + fragment + "\"}}]},\"logprobs\":null,\"finish_reason\":null}]}");
+        }
+        frames.add(PREFIX + "{},\"logprobs\":null,\"finish_reason\":\"tool_calls\"}]}");
+        frames.add("{\"id\":\"chatcmpl-BQxk2mJ9pQeR7sT1uVwXyZ0aB3cD\",\"object\":\"chat.completion.chunk\",\"created\":1745853012,"
+            + "\"model\":\"gpt-4o-mini-2024-07-18\",\"service_tier\":\"default\",\"system_fingerprint\":\"fp_0392822090\",\"choices\":[],"
+            + "\"usage\":{\"prompt_tokens\":1874,\"completion_tokens\":61,\"total_tokens\":1935,\"prompt_tokens_details\":{\"cached_tokens\":1664,"
+            + "\"audio_tokens\":0},\"completion_tokens_details\":{\"reasoning_tokens\":0,\"audio_tokens\":0}}}");
+        List<byte[]> encoded = new ArrayList<>(frames.size());
+        for (String frame : frames) encoded.add(frame.getBytes(StandardCharsets.UTF_8));
+        return encoded;
+    }
+
+    @FunctionalInterface
+    private interface Path {
+        int consume(List<byte[]> frames) throws Exception;
+    }
+}
@@ -0,0 +1,109 @@
+/*  SessionLoadDriver.java The purpose of this class is to measure how many
+ *  concurrent conversations one node can drive through the session loop
+ *  against the stub provider.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.stub;
+
+import com.brandongcobb.discord.component.executor.IoExecutor;
+import com.brandongcobb.discord.component.provider.StubAdapter;
+import com.brandongcobb.discord.component.session.LoopScheduler;
+import com.brandongcobb.discord.component.session.Session;
+import com.brandongcobb.discord.component.transport.ProviderTransport;
+import com.brandongcobb.discord.enums.LoopStop;
+import com.brandongcobb.discord.records.SessionKey;
+import com.brandongcobb.discord.registry.MetricsRegistry;
+import com.brandongcobb.discord.registry.ModelRegistry;
+import com.brandongcobb.discord.utils.inc.Helpers;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ *  Every session runs one turn of DISCORD_LOAD_STEPS iterations, all sessions at once. An iteration is a provider
+ *  request through the adapter followed by DISCORD_LOAD_TOOL_MS of simulated tool latency, with the real
+ *  mailbox and loop scheduler in between; Discord itself is out of the loop.
+ *  Settings:
+ *      DISCORD_LOAD_SESSIONS (500), DISCORD_LOAD_STEPS (3), DISCORD_LOAD_TOOL_MS (50), DISCORD_LOAD_STREAM (true).
+ *  The peak live thread count is reported to show that waiting sessions do not hold threads.
+ */
+public class SessionLoadDriver {
+
+    public static void main(String[] args) throws Exception {
+        int sessions = Helpers.getEnvInt("DISCORD_LOAD_SESSIONS", 500);
+        int steps = Helpers.getEnvInt("DISCORD_LOAD_STEPS", 3);
+        int toolMillis = Helpers.getEnvInt("DISCORD_LOAD_TOOL_MS", 50);
+        boolean stream = Helpers.getEnvBoolean("DISCORD_LOAD_STREAM", true);
+        StubProviderServer stub = null;
+        if (System.getenv("DISCORD_STUB_URL") == null) {
+            stub = new StubProviderServer(Helpers.getEnvInt("DISCORD_STUB_PORT", 18080));
+            stub.start();
+        }
+        IoExecutor ioExecutor = new IoExecutor();
+        ProviderTransport transport = new ProviderTransport(ioExecutor);
+        StubAdapter adapter = new StubAdapter(transport);
+        String endpoint = ModelRegistry.STUB_ENDPOINT_URLS.get("deprecated");
+        LoopScheduler scheduler = new LoopScheduler();
+        try {
+            ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+            long started = System.nanoTime();
+            List<CompletableFuture<LoopStop>> turns = new ArrayList<>(sessions);
+            for (int i = 0; i < sessions; i++) {
+                Session session = new Session(new SessionKey(0L, 0L, i), ioExecutor);
+                AtomicInteger done = new AtomicInteger();
+                turns.add(scheduler.start(session, loop -> CompletableFuture.completedFuture(null), loop ->
+                    adapter.completeFetchResponse(body(session, done.get(), stream), endpoint, stream ? delta -> {} : null)
+                        .thenCompose(response -> CompletableFuture.supplyAsync(() -> done.incrementAndGet() < steps,
+                            CompletableFuture.delayedExecutor(toolMillis, TimeUnit.MILLISECONDS, ioExecutor)))));
+            }
+            CompletableFuture.allOf(turns.toArray(CompletableFuture[]::new)).exceptionally(error -> null).join();
+            double seconds = (System.nanoTime() - started) / 1e9;
+            long finished = turns.stream().filter(turn -> turn.getNow(null) == LoopStop.DONE).count();
+            System.out.printf("sessions=%d steps=%d stream=%s done=%d elapsed=%.2fs turns=%.1f/s iterations=%.1f/s peak_threads=%d%n",
+                sessions, steps, stream, finished, seconds, sessions / seconds, MetricsRegistry.getCount("loop.iterations") / seconds,
+                ManagementFactory.getThreadMXBean().getPeakThreadCount());
+            print("turn", MetricsRegistry.timer("loop.turn"));
+            print("iteration", MetricsRegistry.timer("loop.iteration"));
+            System.out.println("throttled=" + MetricsRegistry.getCount("ai.stub.throttled"));
+        } finally {
+            transport.close();
+            ioExecutor.close();
+            if (stub != null) stub.stop();
+        }
+    }
+
+    private static Map<String, Object> body(Session session, int step, boolean stream) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("model", "stub");
+        body.put("messages", List.of(
+            Map.of("role", "system", "content", "You are a load test."),
+            Map.of("role", "user", "content", session.getConversationId() + " step " + step)));
+        body.put("stream", stream);
+        return body;
+    }
+
+    private static void print(String label, MetricsRegistry.Timer timer) {
+        System.out.printf("%s: n=%d mean=%.1fms p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms%n", label, timer.getCount(),
+            timer.getMeanMillis(), timer.getPercentileMillis(50), timer.getPercentileMillis(90), timer.getPercentileMillis(99), timer.getMaxMillis());
+    }
+}
@@ -0,0 +1,105 @@
+/*  StubLoadDriver.java The purpose of this class is to drive concurrent
+ *  completions through the provider pipeline against the stub and report
+ *  throughput and tail latency.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.stub;
+
+import com.brandongcobb.discord.component.executor.IoExecutor;
+import com.brandongcobb.discord.component.provider.StubAdapter;
+import com.brandongcobb.discord.component.transport.ProviderTransport;
+import com.brandongcobb.discord.registry.MetricsRegistry;
+import com.brandongcobb.discord.registry.ModelRegistry;
+import com.brandongcobb.discord.utils.inc.Helpers;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ *  Exercises adapter, limiter, transport and SSE decoding; Discord and tool execution are out of the loop.
+ *  Every request carries the same system prefix plus a unique user turn, like consecutive conversation turns.
+ *  Settings:
+ *      DISCORD_LOAD_REQUESTS (200), DISCORD_LOAD_CONCURRENCY (16), DISCORD_LOAD_STREAM (true), DISCORD_LOAD_WARMUP (20).
+ *  The stub starts on DISCORD_STUB_PORT unless DISCORD_STUB_URL points somewhere already running.
+ */
+public class StubLoadDriver {
+
+    public static void main(String[] args) throws Exception {
+        int requests = Helpers.getEnvInt("DISCORD_LOAD_REQUESTS", 200);
+        int concurrency = Helpers.getEnvInt("DISCORD_LOAD_CONCURRENCY", 16);
+        int warmup = Helpers.getEnvInt("DISCORD_LOAD_WARMUP", 20);
+        boolean stream = Helpers.getEnvBoolean("DISCORD_LOAD_STREAM", true);
+        StubProviderServer stub = null;
+        if (System.getenv("DISCORD_STUB_URL") == null) {
+            stub = new StubProviderServer(Helpers.getEnvInt("DISCORD_STUB_PORT", 18080));
+            stub.start();
+        }
+        IoExecutor ioExecutor = new IoExecutor();
+        ProviderTransport transport = new ProviderTransport(ioExecutor);
+        StubAdapter adapter = new StubAdapter(transport);
+        String endpoint = ModelRegistry.STUB_ENDPOINT_URLS.get("deprecated");
+        try {
+            run(adapter, endpoint, warmup, concurrency, stream);
+            MetricsRegistry.timer("ai.stub.latency").reset();
+            MetricsRegistry.timer("ai.stub.ttft").reset();
+            long started = System.nanoTime();
+            long failed = run(adapter, endpoint, requests, concurrency, stream);
+            double seconds = (System.nanoTime() - started) / 1e9;
+            System.out.printf("requests=%d concurrency=%d stream=%s failed=%d elapsed=%.2fs throughput=%.1f req/s%n",
+                requests, concurrency, stream, failed, seconds, requests / seconds);
+            print("latency", MetricsRegistry.timer("ai.stub.latency"));
+            if (stream) print("ttft", MetricsRegistry.timer("ai.stub.ttft"));
+            System.out.println("throttled=" + MetricsRegistry.getCount("ai.stub.throttled"));
+        } finally {
+            transport.close();
+            ioExecutor.close();
+            if (stub != null) stub.stop();
+        }
+    }
+
+    private static long run(StubAdapter adapter, String endpoint, int requests, int concurrency, boolean stream) throws InterruptedException {
+        Semaphore slots = new Semaphore(concurrency);
+        AtomicLong failed = new AtomicLong();
+        List<CompletableFuture<?>> futures = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            slots.acquire();
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("model", "stub");
+            body.put("messages", List.of(
+                Map.of("role", "system", "content", "You are a load test."),
+                Map.of("role", "user", "content", "request " + i)));
+            body.put("stream", stream);
+            futures.add(adapter.completeFetchResponse(body, endpoint, stream ? delta -> {} : null)
+                .whenComplete((response, error) -> {
+                    if (error != null) failed.incrementAndGet();
+                    slots.release();
+                }));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).exceptionally(error -> null).join();
+        return failed.get();
+    }
+
+    private static void print(String label, MetricsRegistry.Timer timer) {
+        System.out.printf("%s: n=%d mean=%.1fms p50=%.1fms p90=%.1fms p99=%.1fms max=%.1fms%n", label, timer.getCount(),
+            timer.getMeanMillis(), timer.getPercentileMillis(50), timer.getPercentileMillis(90), timer.getPercentileMillis(99), timer.getMaxMillis());
+    }
+}
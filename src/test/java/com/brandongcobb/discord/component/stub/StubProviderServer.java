@@ -0,0 +1,490 @@
+/*  StubProviderServer.java The purpose of this class is to stand in for an
+ *  OpenAI-compatible provider so the request loop can be exercised and
+ *  benchmarked without network access.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.stub;
+
+import com.brandongcobb.discord.Application;
+import com.brandongcobb.discord.utils.inc.Helpers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/*
+ *  Serves POST /v1/chat/completions (JSON or SSE when "stream": true) and POST /v1/responses (JSON only).
+ *  The batch API is served too: POST /v1/files (multipart), POST /v1/batches, GET /v1/batches/{id} and
+ *  GET /v1/files/{id}/content. A batch completes DISCORD_STUB_BATCH_MS after creation, every line answered with
+ *  the same chat completion body (or a 500 at the error rate) that the synchronous endpoint would give.
+ *  Every knob defaults from DISCORD_STUB_* and can be changed while running:
+ *      tokens per reply, tokens per second, first-token delay, 500 and 429 rates, Retry-After.
+ *  Scripted tool calls are served one per response, in order, before plain text resumes.
+ *  Usage reports cached_tokens from the prefix shared with the previous request, so prompt caching shows up in metrics.
+ */
+public class StubProviderServer {
+
+    private static final Logger LOGGER = Logger.getLogger(Application.class.getName());
+    private static final String[] WORDS = {"lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit"};
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Queue<ScriptedToolCall> toolCalls = new ConcurrentLinkedQueue<>();
+    private final AtomicLong counter = new AtomicLong();
+    private final AtomicReference<String> lastPrompt = new AtomicReference<>("");
+    private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Object>> batches = new ConcurrentHashMap<>();
+    private volatile int replyTokens = Helpers.getEnvInt("DISCORD_STUB_REPLY_TOKENS", 200);
+    private volatile int tokensPerSecond = Helpers.getEnvInt("DISCORD_STUB_TOKENS_PER_SECOND", 100);
+    private volatile int firstTokenDelayMillis = Helpers.getEnvInt("DISCORD_STUB_FIRST_TOKEN_MS", 200);
+    private volatile int errorPercent = Helpers.getEnvInt("DISCORD_STUB_ERROR_PERCENT", 0);
+    private volatile int throttlePercent = Helpers.getEnvInt("DISCORD_STUB_THROTTLE_PERCENT", 0);
+    private volatile int retryAfterSeconds = Helpers.getEnvInt("DISCORD_STUB_RETRY_AFTER_SECONDS", 1);
+    private volatile int batchDelayMillis = Helpers.getEnvInt("DISCORD_STUB_BATCH_MS", 500);
+
+    public StubProviderServer(int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.setExecutor(executor);
+        server.createContext("/v1/chat/completions", exchange -> handle(exchange, false));
+        server.createContext("/v1/responses", exchange -> handle(exchange, true));
+        server.createContext("/v1/files", this::handleFiles);
+        server.createContext("/v1/batches", this::handleBatches);
+    }
+
+    public void start() {
+        server.start();
+        LOGGER.info("Stub provider listening on " + getBaseUrl());
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /*
+     *  Getters
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1";
+    }
+
+    /*
+     *  Setters
+     */
+    public void setReplyTokens(int replyTokens) {
+        this.replyTokens = replyTokens;
+    }
+
+    public void setTokensPerSecond(int tokensPerSecond) {
+        this.tokensPerSecond = tokensPerSecond;
+    }
+
+    public void setFirstTokenDelayMillis(int firstTokenDelayMillis) {
+        this.firstTokenDelayMillis = firstTokenDelayMillis;
+    }
+
+    public void setErrorPercent(int errorPercent) {
+        this.errorPercent = errorPercent;
+    }
+
+    public void setThrottlePercent(int throttlePercent, int retryAfterSeconds) {
+        this.throttlePercent = throttlePercent;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public void setBatchDelayMillis(int batchDelayMillis) {
+        this.batchDelayMillis = batchDelayMillis;
+    }
+
+    public void scriptToolCall(String name, String argumentsJson) {
+        toolCalls.add(new ScriptedToolCall(name, argumentsJson));
+    }
+
+    /*
+     *  Handlers
+     */
+    private void handle(HttpExchange exchange, boolean responsesApi) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "{\"error\":{\"message\":\"method not allowed\"}}");
+                return;
+            }
+            byte[] raw = exchange.getRequestBody().readAllBytes();
+            Map<String, Object> body = mapper.readValue(raw, new TypeReference<Map<String, Object>>() {});
+            int roll = ThreadLocalRandom.current().nextInt(100);
+            if (roll < throttlePercent) {
+                exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+                send(exchange, 429, "{\"error\":{\"type\":\"rate_limit_exceeded\",\"message\":\"stub throttled\"}}");
+                return;
+            }
+            if (roll < throttlePercent + errorPercent) {
+                send(exchange, 500, "{\"error\":{\"type\":\"server_error\",\"message\":\"stub failure\"}}");
+                return;
+            }
+            String model = String.valueOf(body.getOrDefault("model", "stub"));
+            Map<String, Object> usage = usage(body, raw.length);
+            ScriptedToolCall toolCall = toolCalls.poll();
+            String text = toolCall == null ? reply() : "";
+            sleep(firstTokenDelayMillis);
+            if (responsesApi) {
+                send(exchange, 200, mapper.writeValueAsString(responsesBody(model, text, toolCall, usage)));
+            } else if (Boolean.TRUE.equals(body.get("stream"))) {
+                stream(exchange, model, text, toolCall, usage);
+            } else {
+                sleep(replyTokens * 1000L / Math.max(1, tokensPerSecond));
+                send(exchange, 200, mapper.writeValueAsString(chatBody(model, text, toolCall, usage)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOGGER.fine("Stub exchange ended early: " + e.getMessage());
+        }
+    }
+
+    private void handleFiles(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            if ("POST".equals(exchange.getRequestMethod()) && path.equals("/v1/files")) {
+                byte[] content = multipartFile(exchange.getRequestHeaders().getFirst("Content-Type"), exchange.getRequestBody().readAllBytes());
+                if (content == null) {
+                    send(exchange, 400, "{\"error\":{\"message\":\"missing file part\"}}");
+                    return;
+                }
+                String id = "file-stub-" + counter.incrementAndGet();
+                files.put(id, content);
+                send(exchange, 200, mapper.writeValueAsString(fileBody(id, content.length)));
+            } else if ("GET".equals(exchange.getRequestMethod()) && path.endsWith("/content")) {
+                byte[] content = files.get(path.substring("/v1/files/".length(), path.length() - "/content".length()));
+                if (content == null) {
+                    send(exchange, 404, "{\"error\":{\"message\":\"no such file\"}}");
+                    return;
+                }
+                exchange.getResponseHeaders().set("Content-Type", "application/jsonl");
+                exchange.sendResponseHeaders(200, content.length);
+                exchange.getResponseBody().write(content);
+            } else {
+                send(exchange, 405, "{\"error\":{\"message\":\"method not allowed\"}}");
+            }
+        }
+    }
+
+    private void handleBatches(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            if ("POST".equals(exchange.getRequestMethod()) && path.equals("/v1/batches")) {
+                Map<String, Object> body = mapper.readValue(exchange.getRequestBody().readAllBytes(), new TypeReference<Map<String, Object>>() {});
+                String inputFileId = String.valueOf(body.get("input_file_id"));
+                if (!files.containsKey(inputFileId)) {
+                    send(exchange, 400, "{\"error\":{\"message\":\"unknown input_file_id\"}}");
+                    return;
+                }
+                String id = "batch_stub_" + counter.incrementAndGet();
+                Map<String, Object> batch = new ConcurrentHashMap<>();
+                batch.put("id", id);
+                batch.put("object", "batch");
+                batch.put("endpoint", String.valueOf(body.get("endpoint")));
+                batch.put("input_file_id", inputFileId);
+                batch.put("completion_window", String.valueOf(body.getOrDefault("completion_window", "24h")));
+                batch.put("status", "in_progress");
+                batch.put("created_at", System.currentTimeMillis() / 1000);
+                batches.put(id, batch);
+                CompletableFuture.delayedExecutor(batchDelayMillis, TimeUnit.MILLISECONDS, executor).execute(() -> runBatch(batch));
+                send(exchange, 200, mapper.writeValueAsString(batch));
+            } else if ("GET".equals(exchange.getRequestMethod())) {
+                Map<String, Object> batch = batches.get(path.substring(path.lastIndexOf('/') + 1));
+                if (batch == null) {
+                    send(exchange, 404, "{\"error\":{\"message\":\"no such batch\"}}");
+                    return;
+                }
+                send(exchange, 200, mapper.writeValueAsString(batch));
+            } else {
+                send(exchange, 405, "{\"error\":{\"message\":\"method not allowed\"}}");
+            }
+        }
+    }
+
+    /*
+     *  Answers each line of the input file, then publishes the output (and error) file and marks the batch completed.
+     */
+    private void runBatch(Map<String, Object> batch) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        int completed = 0;
+        int failed = 0;
+        try {
+            String input = new String(files.get(String.valueOf(batch.get("input_file_id"))), StandardCharsets.UTF_8);
+            for (String line : input.split("\n")) {
+                if (line.isBlank()) continue;
+                Map<String, Object> request = mapper.readValue(line, new TypeReference<Map<String, Object>>() {});
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("id", "batch_req_stub_" + counter.incrementAndGet());
+                entry.put("custom_id", request.get("custom_id"));
+                Map<String, Object> response = new LinkedHashMap<>();
+                boolean failure = ThreadLocalRandom.current().nextInt(100) < errorPercent;
+                if (failure) {
+                    response.put("status_code", 500);
+                    response.put("body", Map.of("error", Map.of("type", "server_error", "message", "stub failure")));
+                    failed++;
+                } else {
+                    Map<String, Object> body = request.get("body") instanceof Map<?, ?> m
+                        ? mapper.convertValue(m, new TypeReference<Map<String, Object>>() {}) : Map.of();
+                    String model = String.valueOf(body.getOrDefault("model", "stub"));
+                    response.put("status_code", 200);
+                    response.put("body", chatBody(model, reply(), null, usage(body, line.length())));
+                    completed++;
+                }
+                entry.put("response", response);
+                entry.put("error", null);
+                ByteArrayOutputStream target = failure ? errors : output;
+                target.write(mapper.writeValueAsBytes(entry));
+                target.write('\n');
+            }
+            String outputId = "file-stub-" + counter.incrementAndGet();
+            files.put(outputId, output.toByteArray());
+            batch.put("output_file_id", outputId);
+            if (errors.size() > 0) {
+                String errorId = "file-stub-" + counter.incrementAndGet();
+                files.put(errorId, errors.toByteArray());
+                batch.put("error_file_id", errorId);
+            }
+            batch.put("request_counts", Map.of("total", completed + failed, "completed", completed, "failed", failed));
+            batch.put("completed_at", System.currentTimeMillis() / 1000);
+            batch.put("status", "completed");
+        } catch (IOException e) {
+            LOGGER.warning("Stub batch " + batch.get("id") + " failed: " + e.getMessage());
+            batch.put("status", "failed");
+        }
+    }
+
+    private void stream(HttpExchange exchange, String model, String text, ScriptedToolCall toolCall, Map<String, Object> usage) throws IOException, InterruptedException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        String id = "chatcmpl-stub-" + counter.incrementAndGet();
+        long created = System.currentTimeMillis() / 1000;
+        long pause = 1000L / Math.max(1, tokensPerSecond);
+        OutputStream out = exchange.getResponseBody();
+        if (toolCall != null) {
+            // Arguments arrive in fragments the way real providers send them.
+            String arguments = toolCall.argumentsJson();
+            for (int offset = 0, part = 0; offset < arguments.length() || part == 0; offset += 16, part++) {
+                Map<String, Object> function = new LinkedHashMap<>();
+                if (part == 0) function.put("name", toolCall.name());
+                function.put("arguments", arguments.substring(Math.min(offset, arguments.length()), Math.min(offset + 16, arguments.length())));
+                Map<String, Object> call = new LinkedHashMap<>();
+                call.put("index", 0);
+                if (part == 0) {
+                    call.put("id", "call_stub_" + counter.get());
+                    call.put("type", "function");
+                }
+                call.put("function", function);
+                frame(out, chunk(id, created, model, Map.of("tool_calls", List.of(call)), null, null));
+                sleep(pause);
+            }
+        } else {
+            for (String token : text.split("(?<= )")) {
+                frame(out, chunk(id, created, model, Map.of("content", token), null, null));
+                sleep(pause);
+            }
+        }
+        frame(out, chunk(id, created, model, Map.of(), toolCall != null ? "tool_calls" : "stop", usage));
+        out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    /*
+     *  Payloads
+     */
+    private Map<String, Object> chatBody(String model, String text, ScriptedToolCall toolCall, Map<String, Object> usage) {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("role", "assistant");
+        message.put("content", toolCall != null ? null : text);
+        if (toolCall != null) message.put("tool_calls", List.of(toolCallMap(toolCall)));
+        Map<String, Object> choice = new LinkedHashMap<>();
+        choice.put("index", 0);
+        choice.put("message", message);
+        choice.put("finish_reason", toolCall != null ? "tool_calls" : "stop");
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("id", "chatcmpl-stub-" + counter.incrementAndGet());
+        response.put("object", "chat.completion");
+        response.put("created", System.currentTimeMillis() / 1000);
+        response.put("model", model);
+        response.put("choices", List.of(choice));
+        response.put("usage", usage);
+        return response;
+    }
+
+    private Map<String, Object> responsesBody(String model, String text, ScriptedToolCall toolCall, Map<String, Object> usage) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        if (toolCall != null) {
+            item.put("type", "function_call");
+            item.put("call_id", "call_stub_" + counter.get());
+            item.put("name", toolCall.name());
+            item.put("arguments", toolCall.argumentsJson());
+        } else {
+            item.put("type", "message");
+            item.put("role", "assistant");
+            item.put("content", List.of(Map.of("type", "output_text", "text", text)));
+        }
+        Map<String, Object> responsesUsage = new LinkedHashMap<>();
+        responsesUsage.put("input_tokens", usage.get("prompt_tokens"));
+        responsesUsage.put("input_tokens_details", usage.get("prompt_tokens_details"));
+        responsesUsage.put("output_tokens", usage.get("completion_tokens"));
+        responsesUsage.put("total_tokens", usage.get("total_tokens"));
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("id", "resp_stub_" + counter.incrementAndGet());
+        response.put("object", "response");
+        response.put("created_at", (int) (System.currentTimeMillis() / 1000));
+        response.put("status", "completed");
+        response.put("model", model);
+        response.put("output", List.of(item));
+        response.put("usage", responsesUsage);
+        return response;
+    }
+
+    private Map<String, Object> fileBody(String id, int bytes) {
+        Map<String, Object> file = new LinkedHashMap<>();
+        file.put("id", id);
+        file.put("object", "file");
+        file.put("bytes", bytes);
+        file.put("created_at", System.currentTimeMillis() / 1000);
+        file.put("filename", "batch.jsonl");
+        file.put("purpose", "batch");
+        return file;
+    }
+
+    private Map<String, Object> chunk(String id, long created, String model, Map<String, Object> delta, String finishReason, Map<String, Object> usage) {
+        Map<String, Object> choice = new LinkedHashMap<>();
+        choice.put("index", 0);
+        choice.put("delta", delta);
+        choice.put("finish_reason", finishReason);
+        Map<String, Object> chunk = new LinkedHashMap<>();
+        chunk.put("id", id);
+        chunk.put("object", "chat.completion.chunk");
+        chunk.put("created", created);
+        chunk.put("model", model);
+        chunk.put("choices", List.of(choice));
+        if (usage != null) chunk.put("usage", usage);
+        return chunk;
+    }
+
+    private Map<String, Object> toolCallMap(ScriptedToolCall toolCall) {
+        Map<String, Object> function = new LinkedHashMap<>();
+        function.put("name", toolCall.name());
+        function.put("arguments", toolCall.argumentsJson());
+        Map<String, Object> call = new LinkedHashMap<>();
+        call.put("id", "call_stub_" + counter.get());
+        call.put("type", "function");
+        call.put("function", function);
+        return call;
+    }
+
+    /*
+     *  Token counts are approximated at four bytes per token.
+     */
+    private Map<String, Object> usage(Map<String, Object> body, int bodyBytes) throws IOException {
+        Object messages = body.containsKey("messages") ? body.get("messages") : body.get("arguments");
+        String prompt = mapper.writeValueAsString(messages != null ? messages : body);
+        String previous = lastPrompt.getAndSet(prompt);
+        int shared = 0;
+        int limit = Math.min(prompt.length(), previous.length());
+        while (shared < limit && prompt.charAt(shared) == previous.charAt(shared)) shared++;
+        int promptTokens = Math.max(1, bodyBytes / 4);
+        Map<String, Object> usage = new LinkedHashMap<>();
+        usage.put("prompt_tokens", promptTokens);
+        usage.put("completion_tokens", replyTokens);
+        usage.put("total_tokens", promptTokens + replyTokens);
+        usage.put("prompt_tokens_details", Map.of("cached_tokens", Math.min(promptTokens, shared / 4)));
+        return usage;
+    }
+
+    private String reply() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < replyTokens; i++) {
+            if (i > 0) text.append(' ');
+            text.append(WORDS[i % WORDS.length]);
+        }
+        return text.toString();
+    }
+
+    /*
+     *  Just enough multipart/form-data to pull the "file" part out of an upload.
+     */
+    private static byte[] multipartFile(String contentType, byte[] raw) {
+        if (contentType == null || !contentType.contains("boundary=")) return null;
+        String boundary = "--" + contentType.substring(contentType.indexOf("boundary=") + "boundary=".length()).replace("\"", "");
+        String body = new String(raw, StandardCharsets.ISO_8859_1);
+        for (String part : body.split(Pattern.quote(boundary))) {
+            int headerEnd = part.indexOf("\r\n\r\n");
+            if (headerEnd < 0 || !part.substring(0, headerEnd).contains("name=\"file\"")) continue;
+            String content = part.substring(headerEnd + 4);
+            if (content.endsWith("\r\n")) content = content.substring(0, content.length() - 2);
+            return content.getBytes(StandardCharsets.ISO_8859_1);
+        }
+        return null;
+    }
+
+    private void frame(OutputStream out, Map<String, Object> chunk) throws IOException {
+        out.write("data: ".getBytes(StandardCharsets.UTF_8));
+        out.write(mapper.writeValueAsBytes(chunk));
+        out.write("\n\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sleep(long millis) throws InterruptedException {
+        if (millis > 0) Thread.sleep(millis);
+    }
+
+    private record ScriptedToolCall(String name, String argumentsJson) {}
+
+    public static void main(String[] args) throws Exception {
+        StubProviderServer stub = new StubProviderServer(Helpers.getEnvInt("DISCORD_STUB_PORT", 18080));
+        String tool = System.getenv("DISCORD_STUB_TOOL");
+        if (tool != null && tool.contains(":")) {
+            stub.scriptToolCall(tool.substring(0, tool.indexOf(':')), tool.substring(tool.indexOf(':') + 1));
+        }
+        stub.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(stub::stop));
+    }
+}
@@ -0,0 +1,140 @@
+/*  ToolDispatchBenchmark.java The purpose of this class is to compare the
+ *  per-call overhead of JSON-RPC tool calls with in-process dispatch.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.stub;
+
+import com.brandongcobb.discord.component.server.CustomMCPServer;
+import com.brandongcobb.discord.domain.ToolStatus;
+import com.brandongcobb.discord.domain.ToolStatusWrapper;
+import com.brandongcobb.discord.domain.input.ToolInput;
+import com.brandongcobb.discord.service.ToolService;
+import com.brandongcobb.discord.tools.CustomTool;
+import com.brandongcobb.discord.utils.inc.Helpers;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/*
+ *  Runs a no-op tool, so only dispatch is measured: the old E-step path (build a JSON-RPC request, serialize it,
+ *  let CustomMCPServer parse it and serialize the reply, parse that again) against ToolService.dispatch.
+ *  Settings:
+ *      DISCORD_BENCH_CALLS (200000), DISCORD_BENCH_WARMUP (50000).
+ */
+public class ToolDispatchBenchmark {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        int calls = Helpers.getEnvInt("DISCORD_BENCH_CALLS", 200_000);
+        int warmup = Helpers.getEnvInt("DISCORD_BENCH_WARMUP", 50_000);
+        ToolService toolService = new ToolService(null, null, null, null, null, null, null, null, null, null, null);
+        toolService.registerTool(new EchoTool());
+        CustomMCPServer server = new CustomMCPServer(null, toolService);
+        server.handleRequest("{\"jsonrpc\":\"2.0\",\"method\":\"initialize\",\"params\":{},\"id\":\"init-001\"}").join();
+        JsonNode arguments = mapper.readTree("{\"guildId\":\"123456789012345678\",\"channelId\":\"876543210987654321\",\"limit\":25}");
+        Supplier<String> jsonRpc = () -> {
+            ObjectNode request = mapper.createObjectNode();
+            request.put("jsonrpc", "2.0");
+            request.put("method", "tools/call");
+            ObjectNode params = request.putObject("params");
+            params.put("name", EchoTool.NAME);
+            params.set("arguments", arguments);
+            String response = server.handleRequest(request.toString()).join();
+            try {
+                return mapper.readTree(response).path("result").path("message").asText();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        Supplier<String> direct = () -> toolService.dispatch(EchoTool.NAME, arguments).join().getMessage();
+        run("json-rpc", jsonRpc, warmup);
+        run("direct", direct, warmup);
+        double before = run("json-rpc", jsonRpc, calls);
+        double after = run("direct", direct, calls);
+        System.out.printf("speedup=%.1fx%n", before / after);
+    }
+
+    private static double run(String label, Supplier<String> call, int calls) {
+        long sink = 0;
+        long started = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            sink += call.get().length();
+        }
+        double perCall = (System.nanoTime() - started) / (double) calls;
+        System.out.printf("%s: calls=%d per_call=%.2fus (%d)%n", label, calls, perCall / 1000.0, sink);
+        return perCall;
+    }
+
+    public static class EchoInput implements ToolInput {
+
+        public String guildId;
+        public String channelId;
+        public int limit;
+        @JsonIgnore
+        private JsonNode originalJson;
+
+        @Override
+        public JsonNode getOriginalJson() {
+            return originalJson;
+        }
+
+        @Override
+        public void setOriginalJson(JsonNode originalJson) {
+            this.originalJson = originalJson;
+        }
+    }
+
+    private static class EchoTool implements CustomTool<EchoInput, ToolStatus> {
+
+        private static final String NAME = "echo";
+
+        @Override
+        public String getDescription() {
+            return "Returns its arguments";
+        }
+
+        @Override
+        public String getName() {
+            return NAME;
+        }
+
+        @Override
+        public JsonNode getJsonSchema() {
+            return mapper.createObjectNode();
+        }
+
+        @Override
+        public Class<EchoInput> getInputClass() {
+            return EchoInput.class;
+        }
+
+        @Override
+        public CompletableFuture<ToolStatus> run(EchoInput input) {
+            return CompletableFuture.completedFuture(new ToolStatusWrapper(input.guildId + "/" + input.channelId + "/" + input.limit, true, null));
+        }
+
+        @Override
+        public boolean isReadOnly() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*  ChatCompletionChunkParserTest.java The purpose of this class is to check
+ *  that only choice 0 of a streamed chunk reaches the tracked content.
+ *
+ *  Copyright (C) 2025  github.com/brandongrahamcobb
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package com.brandongcobb.discord.component.transport;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ChatCompletionChunkParserTest {
+
+    private ChatCompletionChunkParser parser;
+
+    @Before
+    public void setUp() {
+        parser = new ChatCompletionChunkParser(new ObjectMapper());
+    }
+
+    @Test
+    public void indexBeforeDeltaTracksChoiceZero() throws IOException {
+        assertEquals("Hel", parse("{\"id\":\"c1\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\"Hel\"}},{\"index\":1,\"delta\":{\"content\":\"XX\"}}]}"));
+        assertEquals("lo", parse("{\"choices\":[{\"index\":0,\"delta\":{\"content\":\"lo\"},\"finish_reason\":\"stop\"}]}"));
+        assertEquals("Hello", parser.getContent());
+        assertEquals("stop", parser.getFinishReason());
+        assertEquals("c1", parser.getId());
+    }
+
+    /*
+     *  Field order inside a choice is not fixed; a second choice whose delta precedes its index must not merge into choice 0.
+     */
+    @Test
+    public void deltaBeforeIndexIsNotMergedIntoChoiceZero() throws IOException {
+        assertEquals("Hi", parse("{\"choices\":[{\"delta\":{\"content\":\"Hi\"},\"index\":0},{\"delta\":{\"content\":\"other\"},\"finish_reason\":\"length\",\"index\":1}]}"));
+        assertNull(parse("{\"choices\":[{\"delta\":{\"content\":\"other\",\"tool_calls\":[{\"index\":0,\"id\":\"call_1\",\"type\":\"function\",\"function\":{\"name\":\"search\",\"arguments\":\"{}\"}}]},\"index\":1}]}"));
+        assertEquals("Hi", parser.getContent());
+        assertNull(parser.getFinishReason());
+        assertTrue(parser.getToolCalls().isEmpty());
+    }
+
+    @Test
+    public void deltaBeforeIndexStillTracksToolCalls() throws IOException {
+        parse("{\"choices\":[{\"delta\":{\"tool_calls\":[{\"index\":0,\"id\":\"call_1\",\"type\":\"function\",\"function\":{\"name\":\"search\",\"arguments\":\"{\\\"q\\\":\"}}]},\"index\":0}]}");
+        parse("{\"choices\":[{\"delta\":{\"tool_calls\":[{\"index\":0,\"function\":{\"arguments\":\"\\\"cats\\\"}\"}}]},\"index\":0}]}");
+        assertEquals(1, parser.getToolCalls().size());
+        assertEquals(1, parser.drainToolCalls().size());
+    }
+
+    /*
+     *  Helpers
+     */
+    private String parse(String chunk) throws IOException {
+        byte[] bytes = chunk.getBytes(StandardCharsets.UTF_8);
+        return parser.parse(bytes, 0, bytes.length);
+    }
+}